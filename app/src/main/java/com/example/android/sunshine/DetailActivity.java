@@ -16,26 +16,27 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.databinding.DataBindingUtil;
 import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.LoaderManager;
+import android.support.annotation.Nullable;
 import android.support.v4.app.ShareCompat;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.WeatherDetails;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
 
 public class DetailActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        ForecastRepository.OnForecastChangedListener,
+        ForecastRepository.OnWeatherDetailsLoadedListener {
 
     /*
      * In this Activity, you can share the selected day's forecast. No social sharing is complete
@@ -43,44 +44,6 @@ public class DetailActivity extends AppCompatActivity implements
      */
     private static final String FORECAST_SHARE_HASHTAG = " #SunshineApp";
 
-    /*
-     * The columns of data that we are interested in displaying within our DetailActivity's
-     * weather display.
-     */
-    public static final String[] WEATHER_DETAIL_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
-            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
-            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherContract.WeatherEntry.COLUMN_DEGREES,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_HUMIDITY = 3;
-    public static final int INDEX_WEATHER_PRESSURE = 4;
-    public static final int INDEX_WEATHER_WIND_SPEED = 5;
-    public static final int INDEX_WEATHER_DEGREES = 6;
-    public static final int INDEX_WEATHER_CONDITION_ID = 7;
-
-    /*
-     * This ID will be used to identify the Loader responsible for loading the weather details
-     * for a particular day. In some cases, one Activity can deal with many Loaders. However, in
-     * our case, there is only one. We will still use this ID to initialize the loader and create
-     * the loader for best practice. Please note that 353 was chosen arbitrarily. You can use
-     * whatever number you like, so long as it is unique and consistent.
-     */
-    private static final int ID_DETAIL_LOADER = 353;
-
     /* A summary of the forecast that can be shared by clicking the share button in the ActionBar */
     private String mForecastSummary;
 
@@ -107,8 +70,45 @@ public class DetailActivity extends AppCompatActivity implements
         mUri = getIntent().getData();
         if (mUri == null) throw new NullPointerException("URI for DetailActivity cannot be null");
 
-        /* This connects our Activity into the loader lifecycle. */
-        getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
+        /*
+         * The forecast list prefetches the details of the days it shows, and of the day that was
+         * touched. If ours are already cached, we bind them right now so the very first frame of
+         * this screen has content. Either way, onStart will still check for newer data.
+         */
+        long date = Long.parseLong(mUri.getLastPathSegment());
+        WeatherDetails cachedDetails =
+                ForecastRepository.getInstance(this).getCachedWeatherDetails(date);
+        if (cachedDetails != null) {
+            onWeatherDetailsLoaded(cachedDetails);
+        }
+    }
+
+    /**
+     * While we're visible, we want to reload the day we're showing whenever the weather data
+     * changes. Subscribing to ForecastRepository tells us when that happens.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        ForecastRepository.getInstance(this).subscribe(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ForecastRepository.getInstance(this).unsubscribe(this);
+    }
+
+    /**
+     * Called by ForecastRepository when the forecast has changed, and once when we subscribe.
+     * The forecast list doesn't carry humidity, pressure or wind, so we ask the repository to
+     * load every column of our day on its background thread.
+     *
+     * @param forecast The forecast from today onwards
+     */
+    @Override
+    public void onForecastChanged(Forecast forecast) {
+        ForecastRepository.getInstance(this).loadWeatherDetails(mUri, this);
     }
 
     /**
@@ -179,90 +179,46 @@ public class DetailActivity extends AppCompatActivity implements
     }
 
     /**
-     * Creates and returns a CursorLoader that loads the data for our URI and stores it in a Cursor.
-     *
-     * @param loaderId The loader ID for which we need to create a loader
-     * @param loaderArgs Any arguments supplied by the caller
-     *
-     * @return A new Loader instance that is ready to start loading.
-     */
-    @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle loaderArgs) {
-
-        switch (loaderId) {
-
-            case ID_DETAIL_LOADER:
-
-                return new CursorLoader(this,
-                        mUri,
-                        WEATHER_DETAIL_PROJECTION,
-                        null,
-                        null,
-                        null);
-
-            default:
-                throw new RuntimeException("Loader Not Implemented: " + loaderId);
-        }
-    }
-
-    /**
-     * Runs on the main thread when a load is complete. If initLoader is called (we call it from
-     * onCreate in DetailActivity) and the LoaderManager already has completed a previous load
-     * for this Loader, onLoadFinished will be called immediately. Within onLoadFinished, we bind
-     * the data to our views so the user can see the details of the weather on the date they
-     * selected from the forecast.
+     * Runs on the main thread when the details for our day have been loaded. Within this
+     * method, we bind the data to our views so the user can see the details of the weather on
+     * the date they selected from the forecast.
      *
-     * @param loader The cursor loader that finished.
-     * @param data   The cursor that is being returned.
+     * @param data The weather details, or null if the day isn't in the database
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-
-        /*
-         * Before we bind the data to the UI that will display that data, we need to check the
-         * cursor to make sure we have the results that we are expecting. In order to do that, we
-         * check to make sure the cursor is not null and then we call moveToFirst on the cursor.
-         * Although it may not seem obvious at first, moveToFirst will return true if it contains
-         * a valid first row of data.
-         *
-         * If we have valid data, we want to continue on to bind that data to the UI. If we don't
-         * have any data to bind, we just return from this method.
-         */
-        boolean cursorHasValidData = false;
-        if (data != null && data.moveToFirst()) {
-            /* We have valid data, continue on to bind the data to the UI */
-            cursorHasValidData = true;
-        }
+    public void onWeatherDetailsLoaded(@Nullable WeatherDetails data) {
 
-        if (!cursorHasValidData) {
-            /* No data to display, simply return and do nothing */
+        /* If we don't have any data to bind, we just return from this method. */
+        if (data == null) {
             return;
         }
 
         /****************
          * Weather Icon *
          ****************/
-        /* Read weather condition ID from the cursor (ID provided by Open Weather Map) */
-        int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+        /* Read weather condition ID (ID provided by Open Weather Map) */
+        int weatherId = data.weatherId;
         /* Use our utility method to determine the resource ID for the proper art */
         int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
 
-        /* Set the resource ID on the icon to display the art */
-        mDetailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
+        /* Display the art, rasterized once at the size of the icon and cached for next time */
+        int weatherImageSize = getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mDetailBinding.primaryInfo.weatherIcon.setImageBitmap(
+                WeatherArtCache.getArt(this, weatherImageId, weatherImageSize));
 
         /****************
          * Weather Date *
          ****************/
         /*
-         * Read the date from the cursor. It is important to note that the date from the cursor
-         * is the same date from the weather SQL table. The date that is stored is a GMT
+         * Read the date of the details. It is important to note that this date is the same
+         * date from the weather SQL table. The date that is stored is a GMT
          * representation at midnight of the date when the weather information was loaded for.
          *
          * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
          * the date representation for the local date in local time.
          * SunshineDateUtils#getFriendlyDateString takes care of this for us.
          */
-        long localDateMidnightGmt = data.getLong(INDEX_WEATHER_DATE);
+        long localDateMidnightGmt = data.date;
         String dateText = SunshineDateUtils.getFriendlyDateString(this, localDateMidnightGmt, true);
 
         mDetailBinding.primaryInfo.date.setText(dateText);
@@ -286,8 +242,8 @@ public class DetailActivity extends AppCompatActivity implements
         /**************************
          * High (max) temperature *
          **************************/
-        /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+        /* Read high temperature (in degrees celsius) */
+        double highInCelsius = data.high;
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -305,8 +261,8 @@ public class DetailActivity extends AppCompatActivity implements
         /*************************
          * Low (min) temperature *
          *************************/
-        /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+        /* Read low temperature (in degrees celsius) */
+        double lowInCelsius = data.low;
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -323,8 +279,8 @@ public class DetailActivity extends AppCompatActivity implements
         /************
          * Humidity *
          ************/
-        /* Read humidity from the cursor */
-        float humidity = data.getFloat(INDEX_WEATHER_HUMIDITY);
+        /* Read humidity */
+        float humidity = data.humidity;
         String humidityString = getString(R.string.format_humidity, humidity);
 
         String humidityA11y = getString(R.string.a11y_humidity, humidityString);
@@ -338,9 +294,9 @@ public class DetailActivity extends AppCompatActivity implements
         /****************************
          * Wind speed and direction *
          ****************************/
-        /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
-        float windSpeed = data.getFloat(INDEX_WEATHER_WIND_SPEED);
-        float windDirection = data.getFloat(INDEX_WEATHER_DEGREES);
+        /* Read wind speed (in MPH) and direction (in compass degrees) */
+        float windSpeed = data.windSpeed;
+        float windDirection = data.degrees;
         String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
 
         String windA11y = getString(R.string.a11y_wind, windString);
@@ -354,8 +310,8 @@ public class DetailActivity extends AppCompatActivity implements
         /************
          * Pressure *
          ************/
-        /* Read pressure from the cursor */
-        float pressure = data.getFloat(INDEX_WEATHER_PRESSURE);
+        /* Read pressure */
+        float pressure = data.pressure;
 
         /*
          * Format the pressure text using string resources. The reason we directly access
@@ -378,15 +334,4 @@ public class DetailActivity extends AppCompatActivity implements
         mForecastSummary = String.format("%s - %s - %s/%s",
                 dateText, description, highString, lowString);
     }
-
-    /**
-     * Called when a previously created loader is being reset, thus making its data unavailable.
-     * The application should at this point remove any references it has to the Loader's data.
-     * Since we don't store any of this cursor's data, there are no references we need to remove.
-     *
-     * @param loader The Loader that is being reset.
-     */
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-    }
 }
\ No newline at end of file
@@ -16,21 +16,26 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.data.Forecast;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link Forecast} to a {@link android.support.v7.widget.RecyclerView}.
+ * Updates are diffed against what is already on screen, so only changed rows are rebound.
  */
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -48,11 +53,32 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     final private ForecastAdapterOnClickHandler mClickHandler;
 
+    /* Told whenever mForecast is replaced */
+    final private ForecastAdapterOnSwapHandler mSwapHandler;
+
     /**
      * The interface that receives onClick messages.
      */
     public interface ForecastAdapterOnClickHandler {
         void onClick(long date);
+
+        /*
+         * Called as soon as a finger goes down on an item, before we know whether it will turn
+         * into a click. This gives the handler a head start on loading whatever a click on that
+         * date would need.
+         */
+        void onPress(long date);
+    }
+
+    /**
+     * The interface that hears when the adapter starts showing a new forecast.
+     */
+    public interface ForecastAdapterOnSwapHandler {
+        /*
+         * Called on the main thread once the new forecast's change notifications have been
+         * dispatched. Until then, positions in the list still belong to the old forecast.
+         */
+        void onForecastSwapped();
     }
 
     /*
@@ -63,7 +89,21 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    /*
+     * The sizes, in pixels, that weather art is drawn at for the "today" item and for every other
+     * item. We look these up once here rather than every time an item is bound.
+     */
+    private final int mTodayIconSize;
+    private final int mListIconSize;
+
+    /*
+     * The rows currently displayed by the RecyclerView. This is only replaced on the main thread,
+     * at the same moment the matching change notifications are dispatched.
+     */
+    private Forecast mForecast = Forecast.EMPTY;
+
+    /* The diff that is currently running in the background, if any */
+    private AsyncTask<Void, Void, DiffUtil.DiffResult> mDiffTask;
 
     /**
      * Creates a ForecastAdapter.
@@ -71,11 +111,16 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * @param context      Used to talk to the UI and app resources
      * @param clickHandler The on-click handler for this adapter. This single handler is called
      *                     when an item is clicked.
+     * @param swapHandler  Called whenever the adapter starts showing a new forecast
      */
-    public ForecastAdapter(@NonNull Context context, ForecastAdapterOnClickHandler clickHandler) {
+    public ForecastAdapter(@NonNull Context context, ForecastAdapterOnClickHandler clickHandler,
+                           ForecastAdapterOnSwapHandler swapHandler) {
         mContext = context;
         mClickHandler = clickHandler;
+        mSwapHandler = swapHandler;
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
+        mTodayIconSize = mContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
     }
 
     /**
@@ -129,13 +174,12 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+        int weatherId = mForecast.getWeatherId(position);
         int weatherImageId;
+        int weatherImageSize;
 
         int viewType = getItemViewType(position);
 
@@ -144,24 +188,31 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
             case VIEW_TYPE_TODAY:
                 weatherImageId = SunshineWeatherUtils
                         .getLargeArtResourceIdForWeatherCondition(weatherId);
+                weatherImageSize = mTodayIconSize;
                 break;
 
             case VIEW_TYPE_FUTURE_DAY:
                 weatherImageId = SunshineWeatherUtils
                         .getSmallArtResourceIdForWeatherCondition(weatherId);
+                weatherImageSize = mListIconSize;
                 break;
 
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
+        /*
+         * Only a handful of different pieces of art are ever shown, so rather than inflating the
+         * drawable for every row we bind, we reuse a Bitmap that was drawn at this exact size.
+         */
+        forecastAdapterViewHolder.iconView.setImageBitmap(
+                WeatherArtCache.getArt(mContext, weatherImageId, weatherImageSize));
 
         /****************
          * Weather Date *
          ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+         /* Read date from the forecast */
+        long dateInMillis = mForecast.getDate(position);
          /* Get human readable string using our utility method */
         String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
 
@@ -182,8 +233,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /**************************
          * High (max) temperature *
          **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+         /* Read high temperature from the forecast (in degrees celsius) */
+        double highInCelsius = mForecast.getHigh(position);
          /*
           * If the user's preference for weather is fahrenheit, formatTemperature will convert
           * the temperature. This method will also append either °C or °F to the temperature
@@ -200,8 +251,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /*************************
          * Low (min) temperature *
          *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
+         /* Read low temperature from the forecast (in degrees celsius) */
+        double lowInCelsius = mForecast.getLow(position);
          /*
           * If the user's preference for weather is fahrenheit, formatTemperature will convert
           * the temperature. This method will also append either °C or °F to the temperature
@@ -223,8 +274,18 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        return mForecast.size();
+    }
+
+    /**
+     * Returns the forecast whose rows the RecyclerView has been told about. This is what
+     * positions in the list refer to, which may not yet be the forecast last passed to
+     * {@link #swapForecast(Forecast)}.
+     *
+     * @return The forecast being displayed
+     */
+    Forecast getForecast() {
+        return mForecast;
     }
 
     /**
@@ -234,7 +295,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * different layout for the "today" layout. The "today" layout is only shown in portrait mode
      * with the first item in the list.
      *
-     * @param position index within our RecyclerView and Cursor
+     * @param position index within our RecyclerView and Forecast
      * @return the view type (today or future day)
      */
     @Override
@@ -247,16 +308,58 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
-     * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * Swaps the forecast used by the ForecastAdapter for its weather data. This method is called
+     * by MainActivity whenever ForecastRepository has a new forecast for us.
+     * <p>
+     * The old and new forecasts are compared with {@link DiffUtil} on a background thread, and
+     * only the rows that actually changed are rebound once the comparison is back on the main
+     * thread. If another swap happens while a comparison is running, the stale comparison is
+     * dropped.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param forecast the new forecast to use as ForecastAdapter's data source
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    void swapForecast(Forecast forecast) {
+        final Forecast oldForecast = mForecast;
+        final Forecast newForecast = forecast != null ? forecast : Forecast.EMPTY;
+
+        /* Forecasts are immutable, so being handed the one we're showing means nothing changed */
+        if (newForecast == oldForecast) return;
+
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+            mDiffTask = null;
+        }
+
+        /*
+         * Going from nothing to something (or the other way around) changes every row anyway,
+         * so there is nothing to gain from computing a diff.
+         */
+        if (oldForecast.isEmpty() || newForecast.isEmpty()) {
+            mForecast = newForecast;
+            notifyDataSetChanged();
+            mSwapHandler.onForecastSwapped();
+            return;
+        }
+
+        mDiffTask = new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... voids) {
+                /* Rows are sorted by date, so they can never move relative to each other */
+                return DiffUtil.calculateDiff(
+                        new ForecastDiffCallback(oldForecast, newForecast, mUseTodayLayout),
+                        false);
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+                if (mDiffTask != this) return;
+                mDiffTask = null;
+                mForecast = newForecast;
+                diffResult.dispatchUpdatesTo(ForecastAdapter.this);
+                mSwapHandler.onForecastSwapped();
+            }
+        };
+        mDiffTask.execute();
     }
 
     /**
@@ -264,7 +367,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * a cache of the child views for a forecast item. It's also a convenient place to set an
      * OnClickListener, since it has access to the adapter and the views.
      */
-    class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements
+            View.OnClickListener,
+            View.OnTouchListener {
         final ImageView iconView;
 
         final TextView dateView;
@@ -282,6 +387,28 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
             lowTempView = (TextView) view.findViewById(R.id.low_temperature);
 
             view.setOnClickListener(this);
+            view.setOnTouchListener(this);
+        }
+
+        /**
+         * This gets called for every touch event on the item. We only care about the finger
+         * going down, which we pass on to the onClick handler as an early hint of which date is
+         * likely to be clicked. Returning false lets the View carry on with its normal pressed
+         * state and click handling.
+         *
+         * @param v     the View that was touched
+         * @param event the touch event
+         * @return false, so the event is not consumed
+         */
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                int adapterPosition = getAdapterPosition();
+                if (adapterPosition != RecyclerView.NO_POSITION) {
+                    mClickHandler.onPress(mForecast.getDate(adapterPosition));
+                }
+            }
+            return false;
         }
 
         /**
@@ -294,8 +421,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            long dateInMillis = mForecast.getDate(adapterPosition);
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.sunshine.data.Forecast;
+
+/**
+ * {@link ForecastDiffCallback} tells {@link DiffUtil} how two forecasts relate to each other.
+ * A row is identified by its date, and its contents are the weather condition and the high and
+ * low temperatures.
+ */
+class ForecastDiffCallback extends DiffUtil.Callback {
+
+    private final Forecast mOldForecast;
+    private final Forecast mNewForecast;
+
+    /*
+     * When the "today" layout is in use, the first row is drawn with a different view type than
+     * every other row. A row that moves into or out of the first position has to be rebound even
+     * if its data didn't change, otherwise it would keep the wrong layout.
+     */
+    private final boolean mUseTodayLayout;
+
+    ForecastDiffCallback(Forecast oldForecast, Forecast newForecast, boolean useTodayLayout) {
+        mOldForecast = oldForecast;
+        mNewForecast = newForecast;
+        mUseTodayLayout = useTodayLayout;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldForecast.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewForecast.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldForecast.getDate(oldItemPosition) == mNewForecast.getDate(newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        if (mUseTodayLayout
+                && (oldItemPosition == 0 || newItemPosition == 0)
+                && oldItemPosition != newItemPosition) {
+            return false;
+        }
+
+        return mOldForecast.getWeatherId(oldItemPosition)
+                == mNewForecast.getWeatherId(newItemPosition)
+                && Double.compare(mOldForecast.getHigh(oldItemPosition),
+                        mNewForecast.getHigh(newItemPosition)) == 0
+                && Double.compare(mOldForecast.getLow(oldItemPosition),
+                        mNewForecast.getLow(newItemPosition)) == 0;
+    }
+}
@@ -16,69 +16,58 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
-import android.database.Cursor;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
+import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.FreshnessPolicy;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 
 public class MainActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor>,
-        ForecastAdapter.ForecastAdapterOnClickHandler {
+        ForecastRepository.OnForecastChangedListener,
+        ForecastAdapter.ForecastAdapterOnClickHandler,
+        ForecastAdapter.ForecastAdapterOnSwapHandler,
+        SharedPreferences.OnSharedPreferenceChangeListener {
 
     private final String TAG = MainActivity.class.getSimpleName();
 
     /*
-     * The columns of data that we are interested in displaying within our MainActivity's list of
-     * weather data.
+     * When the forecast first loads, and we can't ask the RecyclerView what's visible yet, we
+     * prefetch the details for this many days from the top of the list.
      */
-    public static final String[] MAIN_FORECAST_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able to
-     * access the data from our query. If the order of the Strings above changes, these indices
-     * must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_CONDITION_ID = 3;
-
-
-    /*
-     * This ID will be used to identify the Loader responsible for loading our weather forecast. In
-     * some cases, one Activity can deal with many Loaders. However, in our case, there is only one.
-     * We will still use this ID to initialize the loader and create the loader for best practice.
-     * Please note that 44 was chosen arbitrarily. You can use whatever number you like, so long as
-     * it is unique and consistent.
-     */
-    private static final int ID_FORECAST_LOADER = 44;
+    private static final int DEFAULT_PREFETCH_DAYS = 7;
 
     private ForecastAdapter mForecastAdapter;
+    private LinearLayoutManager mLayoutManager;
     private RecyclerView mRecyclerView;
     private int mPosition = RecyclerView.NO_POSITION;
 
+    /*
+     * Set when the adapter has switched to a new forecast. The visible positions only match the
+     * new forecast once the RecyclerView has laid it out, so that's when we prefetch.
+     */
+    private boolean mPrefetchAfterLayout;
+
     private ProgressBar mLoadingIndicator;
 
+    private TextView mStaleIndicator;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -101,6 +90,9 @@ public class MainActivity extends AppCompatActivity implements
          */
         mLoadingIndicator = (ProgressBar) findViewById(R.id.pb_loading_indicator);
 
+        /* Tells the user how old the forecast is, once it's too old to pass off as current */
+        mStaleIndicator = (TextView) findViewById(R.id.tv_stale_indicator);
+
         /*
          * A LinearLayoutManager is responsible for measuring and positioning item views within a
          * RecyclerView into a linear list. This means that it can produce either a horizontal or
@@ -114,12 +106,23 @@ public class MainActivity extends AppCompatActivity implements
          * The third parameter (shouldReverseLayout) should be true if you want to reverse your
          * layout. Generally, this is only true with horizontal lists that need to support a
          * right-to-left layout.
+         *
+         * We also hook into the end of every layout, to prefetch details once a new forecast's
+         * rows are actually on screen.
          */
-        LinearLayoutManager layoutManager =
-                new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false);
+        mLayoutManager = new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false) {
+            @Override
+            public void onLayoutCompleted(RecyclerView.State state) {
+                super.onLayoutCompleted(state);
+                if (mPrefetchAfterLayout) {
+                    mPrefetchAfterLayout = false;
+                    prefetchVisibleWeatherDetails();
+                }
+            }
+        };
 
         /* setLayoutManager associates the LayoutManager we created above with our RecyclerView */
-        mRecyclerView.setLayoutManager(layoutManager);
+        mRecyclerView.setLayoutManager(mLayoutManager);
 
         /*
          * Use this setting to improve performance if you know that changes in content do not
@@ -131,31 +134,108 @@ public class MainActivity extends AppCompatActivity implements
          * The ForecastAdapter is responsible for linking our weather data with the Views that
          * will end up displaying our weather data.
          *
-         * Although passing in "this" twice may seem strange, it is actually a sign of separation
-         * of concerns, which is best programming practice. The ForecastAdapter requires an
-         * Android Context (which all Activities are) as well as an onClickHandler. Since our
-         * MainActivity implements the ForecastAdapter ForecastOnClickHandler interface, "this"
-         * is also an instance of that type of handler.
+         * Although passing in "this" three times may seem strange, it is actually a sign of
+         * separation of concerns, which is best programming practice. The ForecastAdapter
+         * requires an Android Context (which all Activities are) as well as an onClickHandler and
+         * an onSwapHandler. Since our MainActivity implements both of the ForecastAdapter handler
+         * interfaces, "this" is also an instance of each type of handler.
          */
-        mForecastAdapter = new ForecastAdapter(this, this);
+        mForecastAdapter = new ForecastAdapter(this, this, this);
 
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mForecastAdapter);
 
-
-        showLoading();
-
         /*
-         * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
-         * created and (if the activity/fragment is currently started) starts the loader. Otherwise
-         * the last created loader is re-used.
+         * Whenever the list comes to rest, prefetch the details of the days that are now on
+         * screen, so that tapping any of them opens DetailActivity with its data already loaded.
          */
-        getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleWeatherDetails();
+                }
+            }
+        });
+
+
+        showLoading();
 
         SunshineSyncUtils.initialize(this);
 
     }
 
+    /**
+     * While we're visible, we want to hear about every new forecast. If ForecastRepository has
+     * already loaded one (because another screen, or a sync, asked for it), it is handed to us
+     * immediately and no query is made.
+     * <p>
+     * Whatever forecast we have is shown right away. If it's past its soft TTL, a sync is
+     * started in the background to revalidate it, and the new forecast replaces it when the sync
+     * is done. We never wait on the network to show something.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        ForecastRepository.getInstance(this).subscribe(this);
+
+        /* FreshnessPolicy keeps its state in SharedPreferences; this is how we hear of syncs */
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(this);
+        updateStaleIndicator();
+
+        SunshineSyncUtils.revalidateIfStale(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ForecastRepository.getInstance(this).unsubscribe(this);
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .unregisterOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (key.startsWith(FreshnessPolicy.PREF_PREFIX)) {
+            updateStaleIndicator();
+        }
+    }
+
+    /**
+     * Shows how old the forecast is if it's past its hard TTL, and hides the indicator
+     * otherwise. With no forecast at all there is nothing to label; the loading indicator is
+     * showing instead.
+     */
+    private void updateStaleIndicator() {
+        Forecast forecast = ForecastRepository.getInstance(this).getForecast();
+        long now = System.currentTimeMillis();
+        FreshnessPolicy freshnessPolicy = FreshnessPolicy.getInstance(this);
+        String location = WeatherContract.WeatherEntry.PREFERRED_LOCATION;
+
+        if (forecast == null || forecast.isEmpty()
+                || freshnessPolicy.getFreshness(location, now) != FreshnessPolicy.EXPIRED) {
+            mStaleIndicator.setVisibility(View.GONE);
+            return;
+        }
+
+        long lastSyncMillis = freshnessPolicy.getLastSyncMillis(location);
+        if (lastSyncMillis == 0) {
+            /*
+             * The forecast is for a location the user has since moved away from. Once the sync
+             * started for the new location has failed, saying it's updating would be a lie.
+             */
+            mStaleIndicator.setText(freshnessPolicy.hasSyncFailed(location)
+                    ? R.string.stale_forecast_update_failed
+                    : R.string.stale_forecast_updating);
+        } else {
+            CharSequence age = DateUtils.getRelativeTimeSpanString(
+                    lastSyncMillis, now, DateUtils.MINUTE_IN_MILLIS);
+            mStaleIndicator.setText(getString(R.string.format_stale_forecast, age));
+        }
+        mStaleIndicator.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Uses the URI scheme for showing a location found on a map in conjunction with
      * an implicit Intent. This super-handy Intent is detailed in the "Common Intents" page of
@@ -183,77 +263,59 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Called by the {@link android.support.v4.app.LoaderManagerImpl} when a new Loader needs to be
-     * created. This Activity only uses one loader, so we don't necessarily NEED to check the
-     * loaderId, but this is certainly best practice.
+     * Called by ForecastRepository on the main thread whenever a new forecast has been loaded.
      *
-     * @param loaderId The loader ID for which we need to create a loader
-     * @param bundle   Any arguments supplied by the caller
-     * @return A new Loader instance that is ready to start loading.
-     */
-    @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle bundle) {
-
-
-        switch (loaderId) {
-
-            case ID_FORECAST_LOADER:
-                /* URI for all rows of weather data in our weather table */
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-                /* Sort order: Ascending by date */
-                String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-                /*
-                 * A SELECTION in SQL declares which rows you'd like to return. In our case, we
-                 * want all weather data from today onwards that is stored in our weather table.
-                 * We created a handy method to do that in our WeatherEntry class.
-                 */
-                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
-
-                return new CursorLoader(this,
-                        forecastQueryUri,
-                        MAIN_FORECAST_PROJECTION,
-                        selection,
-                        null,
-                        sortOrder);
-
-            default:
-                throw new RuntimeException("Loader Not Implemented: " + loaderId);
-        }
-    }
-
-    /**
-     * Called when a Loader has finished loading its data.
-     *
-     * NOTE: There is one small bug in this code. If no data is present in the cursor do to an
+     * NOTE: There is one small bug in this code. If no data is present in the forecast due to an
      * initial load being performed with no access to internet, the loading indicator will show
      * indefinitely, until data is present from the ContentProvider. This will be fixed in a
      * future version of the course.
      *
-     * @param loader The Loader that has finished.
-     * @param data   The data generated by the Loader.
+     * @param forecast The forecast from today onwards
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onForecastChanged(Forecast forecast) {
 
-        mForecastAdapter.swapCursor(data);
+        mForecastAdapter.swapForecast(forecast);
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
         mRecyclerView.smoothScrollToPosition(mPosition);
-        if (data.getCount() != 0) showWeatherDataView();
+        if (!forecast.isEmpty()) showWeatherDataView();
+        updateStaleIndicator();
     }
 
     /**
-     * Called when a previously created loader is being reset, and thus making its data unavailable.
-     * The application should at this point remove any references it has to the Loader's data.
-     *
-     * @param loader The Loader that is being reset.
+     * Called by ForecastAdapter once it has dispatched a new forecast to the RecyclerView. The
+     * details are prefetched after the next layout, when the visible positions are the new
+     * forecast's. We ask for that layout, since a forecast whose rows are all unchanged wouldn't
+     * cause one.
      */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        /*
-         * Since this Loader's data is now invalid, we need to clear the Adapter that is
-         * displaying the data.
-         */
-        mForecastAdapter.swapCursor(null);
+    public void onForecastSwapped() {
+        mPrefetchAfterLayout = true;
+        mRecyclerView.requestLayout();
+    }
+
+    /**
+     * Asks ForecastRepository to load the details of every day that is currently visible in the
+     * list. Before the list has been laid out, the first few days are used instead.
+     * <p>
+     * Dates come from the adapter's forecast, which is the one the visible positions refer to,
+     * rather than the newest one ForecastRepository has.
+     */
+    private void prefetchVisibleWeatherDetails() {
+        Forecast forecast = mForecastAdapter.getForecast();
+        if (forecast.isEmpty()) return;
+
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            first = 0;
+            last = DEFAULT_PREFETCH_DAYS - 1;
+        }
+        last = Math.min(last, forecast.size() - 1);
+        if (first > last) return;
+
+        ForecastRepository.getInstance(this)
+                .prefetchWeatherDetails(forecast.getDate(first), forecast.getDate(last));
     }
 
     /**
@@ -270,6 +332,18 @@ public class MainActivity extends AppCompatActivity implements
         startActivity(weatherDetailIntent);
     }
 
+    /**
+     * This method is called as soon as a finger goes down on a day in our list. If the touch
+     * turns into a click, DetailActivity will want that day's details, so we start loading them
+     * now rather than once it has been created.
+     *
+     * @param date Normalized UTC time that represents the local date of the weather in GMT time.
+     */
+    @Override
+    public void onPress(long date) {
+        ForecastRepository.getInstance(this).prefetchWeatherDetails(date, date);
+    }
+
     /**
      * This method will make the View for the weather data visible and hide the error message and
      * loading indicator.
@@ -26,7 +26,9 @@ import android.support.v7.preference.PreferenceScreen;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.FreshnessPolicy;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.sync.WearForecastPublisher;
 
 /**
  * The SettingsFragment serves as the display for all of the user's settings. In Sunshine, the
@@ -98,10 +100,16 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SunshinePreferences.resetLocationCoordinates(activity);
+            // The forecast we have is for the old location; show it as out of date until the
+            // new location's arrives
+            FreshnessPolicy.getInstance(activity)
+                    .invalidate(WeatherContract.WeatherEntry.PREFERRED_LOCATION);
             SunshineSyncUtils.startImmediateSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
             activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // the watch shows temperatures in these units too
+            WearForecastPublisher.getInstance(activity).publish(null);
         }
         Preference preference = findPreference(key);
         if (null != preference) {
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+
+import com.example.android.sunshine.utilities.WeatherArtCache;
+
+/**
+ * The Application is the one component that hears about memory pressure for the whole process,
+ * whichever of our Activities or Services is running. We use it to let our in-memory caches give
+ * memory back to the system when asked.
+ */
+public class SunshineApplication extends Application {
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        WeatherArtCache.trimMemory(level);
+    }
+
+    /*
+     * onTrimMemory was added in API 14. On older devices, onLowMemory is all we get, and it means
+     * the same thing as the most severe trim level.
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        WeatherArtCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+}
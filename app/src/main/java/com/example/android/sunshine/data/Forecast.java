@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+
+/**
+ * {@link Forecast} is an immutable, in-memory copy of the forecast list.
+ * <p>
+ * Rather than one object per day, each column is stored in its own primitive array, and the
+ * arrays are indexed by position in the list. Reading a day is a handful of array reads, there is
+ * no Cursor to keep open, and a Forecast can be handed between threads freely since nothing in
+ * it ever changes after it is built.
+ */
+public final class Forecast {
+
+    /*
+     * The columns of data that we need to build a Forecast. Queries whose results will be turned
+     * into a Forecast using fromCursor must use this projection.
+     */
+    public static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    /*
+     * We store the indices of the values in the array of Strings above to more quickly be able to
+     * access the data from our query. If the order of the Strings above changes, these indices
+     * must be adjusted to match the order of the Strings.
+     */
+    public static final int INDEX_WEATHER_DATE = 0;
+    public static final int INDEX_WEATHER_MAX_TEMP = 1;
+    public static final int INDEX_WEATHER_MIN_TEMP = 2;
+    public static final int INDEX_WEATHER_CONDITION_ID = 3;
+
+    public static final Forecast EMPTY =
+            new Forecast(new long[0], new int[0], new double[0], new double[0]);
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+
+    private Forecast(long[] dates, int[] weatherIds, double[] highs, double[] lows) {
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * Copies every row of a Cursor that was queried with {@link #PROJECTION}. This touches every
+     * row of the Cursor, so it should be called off of the main thread. The Cursor is left open;
+     * closing it is the caller's responsibility.
+     *
+     * @param cursor The forecast Cursor, or null if there is no data
+     * @return A Forecast holding the Cursor's rows
+     */
+    public static Forecast fromCursor(Cursor cursor) {
+        if (cursor == null || cursor.getCount() == 0) return EMPTY;
+
+        int count = cursor.getCount();
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(i);
+            dates[i] = cursor.getLong(INDEX_WEATHER_DATE);
+            weatherIds[i] = cursor.getInt(INDEX_WEATHER_CONDITION_ID);
+            highs[i] = cursor.getDouble(INDEX_WEATHER_MAX_TEMP);
+            lows[i] = cursor.getDouble(INDEX_WEATHER_MIN_TEMP);
+        }
+
+        return new Forecast(dates, weatherIds, highs, lows);
+    }
+
+    /**
+     * @return The number of days in this forecast
+     */
+    public int size() {
+        return mDates.length;
+    }
+
+    public boolean isEmpty() {
+        return mDates.length == 0;
+    }
+
+    /**
+     * Finds the position of a particular day in this forecast. Days are sorted by date, so this
+     * is a binary search.
+     *
+     * @param date Normalized UTC date of the day to look for
+     * @return The position of that day, or -1 if the day isn't part of this forecast
+     */
+    public int indexOfDate(long date) {
+        int low = 0;
+        int high = mDates.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleDate = mDates[middle];
+            if (middleDate < date) {
+                low = middle + 1;
+            } else if (middleDate > date) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position Position of the day within this forecast
+     * @return Normalized UTC date of the day
+     * @see WeatherContract.WeatherEntry#COLUMN_DATE
+     */
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    /**
+     * @param position Position of the day within this forecast
+     * @return Weather condition ID as returned by the API
+     */
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    /**
+     * @param position Position of the day within this forecast
+     * @return High temperature in degrees celsius
+     */
+    public double getHigh(int position) {
+        return mHighs[position];
+    }
+
+    /**
+     * @param position Position of the day within this forecast
+     * @return Low temperature in degrees celsius
+     */
+    public double getLow(int position) {
+        return mLows[position];
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ForecastRepository} is the one place in Sunshine that reads the forecast list out of
+ * {@link WeatherProvider}.
+ * <p>
+ * It keeps the most recently loaded {@link Forecast} in memory and reloads it on a single
+ * background thread whenever the weather table changes. Screens subscribe to be told about new
+ * forecasts on the main thread, and background work (notifications, the wearable) asks for the
+ * current forecast directly. However many consumers there are, the forecast is queried once per
+ * change.
+ * <p>
+ * It also keeps a small cache of {@link WeatherDetails} for the days the user is likely to open
+ * next. The forecast list prefetches the days that are on screen, so that the detail screen can
+ * usually be bound before its first frame instead of waiting on a query.
+ */
+public final class ForecastRepository {
+
+    private static final String TAG = ForecastRepository.class.getSimpleName();
+
+    /**
+     * The interface that receives the forecast whenever it changes. Always called on the main
+     * thread.
+     */
+    public interface OnForecastChangedListener {
+        void onForecastChanged(Forecast forecast);
+    }
+
+    /**
+     * The interface that receives the result of {@link #loadWeatherDetails}. Always called on
+     * the main thread.
+     */
+    public interface OnWeatherDetailsLoadedListener {
+        void onWeatherDetailsLoaded(@Nullable WeatherDetails details);
+    }
+
+    /* More than a full forecast's worth of days, so the whole list fits in the details cache */
+    private static final int WEATHER_DETAILS_CACHE_SIZE = 32;
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+
+    /* Every query runs on this thread, one at a time */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Only touched on the main thread */
+    private final List<OnForecastChangedListener> mListeners = new ArrayList<>();
+
+    /* True while a load has been queued but hasn't started yet; extra requests coalesce into it */
+    private final AtomicBoolean mLoadQueued = new AtomicBoolean();
+
+    private volatile Forecast mForecast;
+
+    /* Only touched on the executor thread */
+    private long mForecastDataVersion;
+    private long mForecastToday;
+
+    /*
+     * Details keyed by normalized date. Entries are only valid for the version of the weather
+     * data they were read from; when the data changes, the whole cache is dropped.
+     */
+    private final LruCache<Long, WeatherDetails> mWeatherDetailsCache =
+            new LruCache<>(WEATHER_DETAILS_CACHE_SIZE);
+    private final Object mWeatherDetailsLock = new Object();
+    private long mWeatherDetailsDataVersion;
+
+    private final Runnable mLoadTask = new Runnable() {
+        @Override
+        public void run() {
+            mLoadQueued.set(false);
+            loadIfStale();
+        }
+    };
+
+    private ForecastRepository(Context context) {
+        mContext = context.getApplicationContext();
+
+        /*
+         * WeatherProvider notifies this URI after every write. We don't care which thread the
+         * notification arrives on, since all we do is queue a load.
+         */
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        requestLoad();
+                    }
+                });
+    }
+
+    /**
+     * Returns the process-wide ForecastRepository, creating it if necessary.
+     *
+     * @param context Any context; only the application context is kept
+     * @return The ForecastRepository
+     */
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the forecast that was most recently loaded, without doing any work.
+     *
+     * @return The current forecast, or null if it hasn't been loaded yet
+     */
+    @Nullable
+    public Forecast getForecast() {
+        return mForecast;
+    }
+
+    /**
+     * Registers a listener for forecast changes. If a forecast has already been loaded, the
+     * listener is called with it right away; otherwise a load is started. Must be called on the
+     * main thread.
+     *
+     * @param listener The listener to register
+     */
+    public void subscribe(@NonNull OnForecastChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+
+        Forecast forecast = mForecast;
+        if (forecast != null) {
+            listener.onForecastChanged(forecast);
+        }
+
+        /* Cheap if the forecast is already current: no query is made in that case */
+        requestLoad();
+    }
+
+    /**
+     * Unregisters a listener that was registered with {@link #subscribe}. Must be called on the
+     * main thread.
+     *
+     * @param listener The listener to unregister
+     */
+    public void unsubscribe(@NonNull OnForecastChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Queues a load of the forecast on the background thread. If a load is already queued, this
+     * does nothing. If the forecast turns out to be current when the load runs, no query is made.
+     */
+    public void requestLoad() {
+        if (mLoadQueued.compareAndSet(false, true)) {
+            mExecutor.execute(mLoadTask);
+        }
+    }
+
+    /**
+     * Returns a forecast that reflects every write made to {@link WeatherProvider} before this
+     * call, loading it first if necessary. This blocks, so it must not be called on the main
+     * thread. Subscribers are notified of the new forecast as well.
+     *
+     * @return The current forecast
+     */
+    @WorkerThread
+    @NonNull
+    public Forecast awaitForecast() {
+        Future<Forecast> load = mExecutor.submit(new Callable<Forecast>() {
+            @Override
+            public Forecast call() throws Exception {
+                return loadIfStale();
+            }
+        });
+
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            /* Let the caller see it was interrupted, and fall back on what we already have */
+            Thread.currentThread().interrupt();
+            Log.e(TAG, "Interrupted while waiting for the forecast", e);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Loading the forecast failed", e.getCause());
+        }
+
+        Forecast forecast = mForecast;
+        return forecast != null ? forecast : Forecast.EMPTY;
+    }
+
+    /**
+     * Returns the details for a day if they have already been loaded and the weather data hasn't
+     * changed since. This never queries, so it is safe to call on the main thread.
+     *
+     * @param date Normalized UTC date of the day
+     * @return The cached details, or null if they aren't cached
+     */
+    @Nullable
+    public WeatherDetails getCachedWeatherDetails(long date) {
+        synchronized (mWeatherDetailsLock) {
+            if (mWeatherDetailsDataVersion != WeatherProvider.getDataVersion()) {
+                mWeatherDetailsCache.evictAll();
+                return null;
+            }
+            return mWeatherDetailsCache.get(date);
+        }
+    }
+
+    /**
+     * Loads the details for every day between two dates into the details cache, on the
+     * background thread. Days that are already cached are not queried again.
+     *
+     * @param firstDate Normalized UTC date of the first day to prefetch
+     * @param lastDate  Normalized UTC date of the last day to prefetch (inclusive)
+     */
+    public void prefetchWeatherDetails(final long firstDate, final long lastDate) {
+        if (lastDate < firstDate) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isCachedThrough(firstDate, lastDate)) return;
+
+                long dataVersion = WeatherProvider.getDataVersion();
+
+                String selection = WeatherContract.WeatherEntry.getSqlSelectForPreferredLocation()
+                        + " AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?";
+                String[] selectionArgs = {Long.toString(firstDate), Long.toString(lastDate)};
+
+                Cursor cursor = mContext.getContentResolver().query(
+                        WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherDetails.PROJECTION,
+                        selection,
+                        selectionArgs,
+                        null);
+
+                if (cursor == null) return;
+
+                try {
+                    while (cursor.moveToNext()) {
+                        cacheWeatherDetails(WeatherDetails.fromCursor(cursor), dataVersion);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads every column of a single day of weather on the background thread. If the day is
+     * already in the details cache, no query is made.
+     *
+     * @param uri      The URI of the day, as built by
+     *                 {@link WeatherContract.WeatherEntry#buildWeatherUriWithDate(long)}
+     * @param listener Called on the main thread with the result, or with null if the day isn't
+     *                 in the database
+     */
+    public void loadWeatherDetails(final Uri uri,
+                                   final OnWeatherDetailsLoadedListener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long date = Long.parseLong(uri.getLastPathSegment());
+                WeatherDetails details = getCachedWeatherDetails(date);
+
+                if (details == null) {
+                    long dataVersion = WeatherProvider.getDataVersion();
+
+                    Cursor cursor = mContext.getContentResolver().query(
+                            uri,
+                            WeatherDetails.PROJECTION,
+                            null,
+                            null,
+                            null);
+
+                    if (cursor != null) {
+                        try {
+                            if (cursor.moveToFirst()) {
+                                details = WeatherDetails.fromCursor(cursor);
+                                cacheWeatherDetails(details, dataVersion);
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                }
+
+                final WeatherDetails result = details;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onWeatherDetailsLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void cacheWeatherDetails(WeatherDetails details, long dataVersion) {
+        synchronized (mWeatherDetailsLock) {
+            if (dataVersion != mWeatherDetailsDataVersion) {
+                /* Whatever is cached was read from older data than this */
+                mWeatherDetailsCache.evictAll();
+                mWeatherDetailsDataVersion = dataVersion;
+            }
+            mWeatherDetailsCache.put(details.date, details);
+        }
+    }
+
+    private boolean isCachedThrough(long firstDate, long lastDate) {
+        for (long date = firstDate; date <= lastDate; date += SunshineDateUtils.DAY_IN_MILLIS) {
+            if (getCachedWeatherDetails(date) == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queries the forecast from today onwards unless the forecast we already hold was built from
+     * the current version of the weather data on the current day. Runs on the executor thread.
+     *
+     * @return The current forecast
+     */
+    private Forecast loadIfStale() {
+        /* Read the version before querying, so a write that races with the query isn't missed */
+        long dataVersion = WeatherProvider.getDataVersion();
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        Forecast current = mForecast;
+        if (current != null && dataVersion == mForecastDataVersion && today == mForecastToday) {
+            return current;
+        }
+
+        /* Sort order: Ascending by date */
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        /* We want all weather data from today onwards that is stored in our weather table */
+        String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                Forecast.PROJECTION,
+                selection,
+                null,
+                sortOrder);
+
+        Forecast forecast;
+        if (cursor == null) {
+            forecast = Forecast.EMPTY;
+        } else {
+            try {
+                forecast = Forecast.fromCursor(cursor);
+            } finally {
+                /* Always close your cursor when you're done with it to avoid wasting resources. */
+                cursor.close();
+            }
+        }
+
+        mForecast = forecast;
+        mForecastDataVersion = dataVersion;
+        mForecastToday = today;
+
+        publish(forecast);
+        return forecast;
+    }
+
+    private void publish(final Forecast forecast) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                /* A newer forecast may already have been loaded; only deliver the latest */
+                if (forecast != mForecast) return;
+
+                /* Copy, so that listeners may unsubscribe from within the callback */
+                List<OnForecastChangedListener> listeners = new ArrayList<>(mListeners);
+                for (OnForecastChangedListener listener : listeners) {
+                    listener.onForecastChanged(forecast);
+                }
+            }
+        });
+    }
+}
@@ -19,8 +19,12 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
+import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.R;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public final class SunshinePreferences {
 
     /*
@@ -31,6 +35,21 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * Overrides the weather server set in app/build.gradle. There is no setting for it in the UI;
+     * it is there so tests and benchmarks can sync against a local server.
+     */
+    public static final String PREF_FORECAST_BASE_URL = "forecast_base_url";
+
+    /*
+     * Locations whose forecasts are synced alongside the preferred location's, as location
+     * queries separated by newlines. A String rather than a String Set, because
+     * SharedPreferences only supports Sets from API 11 on.
+     */
+    public static final String PREF_SAVED_LOCATIONS = "saved_locations";
+
+    private static final String SAVED_LOCATIONS_SEPARATOR = "\n";
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -242,4 +261,79 @@ public final class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the base URL of the weather server to sync from. This is the FORECAST_BASE_URL set
+     * in app/build.gradle, unless it has been overridden with {@link #setForecastBaseUrl}.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The base URL of the weather server
+     */
+    public static String getForecastBaseUrl(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getString(PREF_FORECAST_BASE_URL, BuildConfig.FORECAST_BASE_URL);
+    }
+
+    /**
+     * Overrides the base URL of the weather server to sync from.
+     *
+     * @param context         Used to access SharedPreferences
+     * @param forecastBaseUrl The base URL to use, or null to go back to the one set in
+     *                        app/build.gradle
+     */
+    public static void setForecastBaseUrl(Context context, String forecastBaseUrl) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        if (forecastBaseUrl == null) {
+            editor.remove(PREF_FORECAST_BASE_URL);
+        } else {
+            editor.putString(PREF_FORECAST_BASE_URL, forecastBaseUrl);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Returns the locations whose forecasts are synced alongside the preferred location's. The
+     * preferred location itself is never in this list.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The saved locations' queries, in the order they were saved. Empty if there are none.
+     */
+    public static List<String> getSavedLocations(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String savedLocations = sp.getString(PREF_SAVED_LOCATIONS, "");
+        String preferredLocation = getPreferredWeatherLocation(context);
+
+        List<String> locations = new ArrayList<>();
+        for (String location : savedLocations.split(SAVED_LOCATIONS_SEPARATOR)) {
+            location = location.trim();
+            if (location.length() > 0 && !location.equals(preferredLocation)
+                    && !locations.contains(location)) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Sets the locations whose forecasts are synced alongside the preferred location's.
+     *
+     * @param context   Used to access SharedPreferences
+     * @param locations The locations' queries, as they would be entered for the preferred
+     *                  location. May be empty.
+     */
+    public static void setSavedLocations(Context context, List<String> locations) {
+        StringBuilder savedLocations = new StringBuilder();
+        for (String location : locations) {
+            if (savedLocations.length() > 0) {
+                savedLocations.append('\n');
+            }
+            savedLocations.append(location.trim());
+        }
+
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putString(PREF_SAVED_LOCATIONS, savedLocations.toString());
+        editor.apply();
+    }
+}
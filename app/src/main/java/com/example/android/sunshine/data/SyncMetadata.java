@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.data.WeatherContract.SyncMetadataEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SyncMetadata} is an immutable copy of one location's row in the sync metadata table: a
+ * summary of what the weather table holds for the location, kept up to date by WeatherProvider.
+ * <p>
+ * Reading it is a lookup of a single row, so it's the cheap way to ask "do we have weather for
+ * this location?" without querying the weather table. A location with no rows has no metadata
+ * row either, and is read as a SyncMetadata with a row count of 0.
+ * <p>
+ * The query methods touch the database, so they must not be called on the main thread.
+ */
+public final class SyncMetadata {
+
+    /*
+     * The columns of data that we need to build a SyncMetadata. Queries whose results will be
+     * turned into SyncMetadata using fromCursor must use this projection.
+     */
+    public static final String[] PROJECTION = {
+            SyncMetadataEntry.COLUMN_LOCATION,
+            SyncMetadataEntry.COLUMN_LAST_UPDATED,
+            SyncMetadataEntry.COLUMN_ROW_COUNT,
+            SyncMetadataEntry.COLUMN_FIRST_DATE,
+            SyncMetadataEntry.COLUMN_LAST_DATE,
+            SyncMetadataEntry.COLUMN_ETAG,
+            SyncMetadataEntry.COLUMN_LAST_MODIFIED
+    };
+
+    /*
+     * We store the indices of the values in the array of Strings above to more quickly be able
+     * to access the data from our query. If the order of the Strings above changes, these
+     * indices must be adjusted to match the order of the Strings.
+     */
+    public static final int INDEX_LOCATION = 0;
+    public static final int INDEX_LAST_UPDATED = 1;
+    public static final int INDEX_ROW_COUNT = 2;
+    public static final int INDEX_FIRST_DATE = 3;
+    public static final int INDEX_LAST_DATE = 4;
+    public static final int INDEX_ETAG = 5;
+    public static final int INDEX_LAST_MODIFIED = 6;
+
+    public final String location;
+    /* When the location's rows were last written, or 0 if it has none */
+    public final long lastUpdatedMillis;
+    public final long rowCount;
+    /* The normalized dates of the location's first and last rows */
+    public final long firstDate;
+    public final long lastDate;
+    /* The validators of the response the rows came from, or null */
+    public final String eTag;
+    public final String lastModified;
+
+    private SyncMetadata(Cursor cursor) {
+        location = cursor.getString(INDEX_LOCATION);
+        lastUpdatedMillis = cursor.getLong(INDEX_LAST_UPDATED);
+        rowCount = cursor.getLong(INDEX_ROW_COUNT);
+        firstDate = cursor.getLong(INDEX_FIRST_DATE);
+        lastDate = cursor.getLong(INDEX_LAST_DATE);
+        eTag = cursor.getString(INDEX_ETAG);
+        lastModified = cursor.getString(INDEX_LAST_MODIFIED);
+    }
+
+    /* The metadata of a location that has no rows */
+    private SyncMetadata(String location) {
+        this.location = location;
+        lastUpdatedMillis = 0;
+        rowCount = 0;
+        firstDate = 0;
+        lastDate = 0;
+        eTag = null;
+        lastModified = null;
+    }
+
+    /**
+     * Copies the row the Cursor is currently positioned on. The Cursor must have been queried
+     * with {@link #PROJECTION}. The Cursor is left open; closing it is the caller's
+     * responsibility.
+     *
+     * @param cursor A Cursor positioned on a valid row
+     * @return The SyncMetadata of that row
+     */
+    public static SyncMetadata fromCursor(Cursor cursor) {
+        return new SyncMetadata(cursor);
+    }
+
+    /**
+     * @return True if the weather table has any rows for the location
+     */
+    public boolean hasData() {
+        return rowCount > 0;
+    }
+
+    /**
+     * @param normalizedDate A normalized date, usually today's
+     * @return True if the weather table has rows for the location on or after the date, which
+     * is what the forecast list needs to have something to show
+     */
+    public boolean hasDataFrom(long normalizedDate) {
+        return hasData() && lastDate >= normalizedDate;
+    }
+
+    /**
+     * @return True if the server sent validators with the response the rows came from, so the
+     * next request for the location can be a conditional one
+     */
+    public boolean hasValidators() {
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * Reads one location's metadata.
+     *
+     * @param context  Used to reach WeatherProvider
+     * @param location The location, as stored in WeatherEntry.COLUMN_LOCATION
+     * @return The location's metadata, with a row count of 0 if it has no rows
+     */
+    public static SyncMetadata query(Context context, String location) {
+        Cursor cursor = context.getContentResolver().query(
+                SyncMetadataEntry.CONTENT_URI,
+                PROJECTION,
+                SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                new String[]{location},
+                null);
+
+        /* A null Cursor means we couldn't find out, which is no better than having no data */
+        if (cursor == null) {
+            return new SyncMetadata(location);
+        }
+        try {
+            return cursor.moveToFirst() ? fromCursor(cursor) : new SyncMetadata(location);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the metadata of every location that has rows.
+     *
+     * @param context Used to reach WeatherProvider
+     * @return Each location's metadata. Locations with no rows are left out.
+     */
+    public static Map<String, SyncMetadata> queryAll(Context context) {
+        Map<String, SyncMetadata> metadata = new HashMap<>();
+        Cursor cursor = context.getContentResolver().query(
+                SyncMetadataEntry.CONTENT_URI,
+                PROJECTION,
+                null,
+                null,
+                null);
+
+        if (cursor == null) {
+            return metadata;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                SyncMetadata locationMetadata = fromCursor(cursor);
+                metadata.put(locationMetadata.location, locationMetadata);
+            }
+        } finally {
+            cursor.close();
+        }
+        return metadata;
+    }
+
+    /**
+     * Stores the validators of the response a location's rows were just written from. Call it
+     * after the write; WeatherProvider clears the validators whenever the rows change.
+     *
+     * @param context      Used to reach WeatherProvider
+     * @param location     The location, as stored in WeatherEntry.COLUMN_LOCATION
+     * @param eTag         The response's ETag header, or null
+     * @param lastModified The response's Last-Modified header, or null
+     */
+    public static void updateValidators(Context context, String location, String eTag,
+                                        String lastModified) {
+        ContentValues validators = new ContentValues();
+        validators.put(SyncMetadataEntry.COLUMN_ETAG, eTag);
+        validators.put(SyncMetadataEntry.COLUMN_LAST_MODIFIED, lastModified);
+        context.getContentResolver().update(
+                SyncMetadataEntry.CONTENT_URI,
+                validators,
+                SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                new String[]{location});
+    }
+}
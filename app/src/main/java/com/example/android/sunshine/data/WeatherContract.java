@@ -20,6 +20,8 @@ import android.provider.BaseColumns;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.Collection;
+
 /**
  * Defines table and column names for the weather database. This class is not necessary, but keeps
  * the code organized.
@@ -55,6 +57,7 @@ public class WeatherContract {
      * "givemeroot". At least, let's hope not. Don't be that dev, reader. Don't be that dev.
      */
     public static final String PATH_WEATHER = "weather";
+    public static final String PATH_SYNC_METADATA = "sync_metadata";
 
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
@@ -88,6 +91,32 @@ public class WeatherContract {
         /* Weather ID as returned by API, used to identify the icon to be used */
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
+        /*
+         * The location a row is the weather for. The forecast for the user's preferred location,
+         * which is what the forecast list, the detail screen and the notification show, is stored
+         * under PREFERRED_LOCATION. Saved locations are stored under their location query, the
+         * same String that is sent to the weather server.
+         *
+         * The preferred location doesn't use its own name, so changing it in the settings doesn't
+         * orphan the old rows; the next sync simply replaces them.
+         */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* The value of COLUMN_LOCATION for the preferred location's forecast */
+        public static final String PREFERRED_LOCATION = "";
+
+        /*
+         * Add this query parameter to CONTENT_URI for a bulkInsert that replaces the forecast of
+         * every location in it, instead of adding to it. See buildReplaceUri.
+         */
+        public static final String QUERY_PARAMETER_REPLACE = "replace";
+
+        /*
+         * Added to a replace URI once for every location whose rows should be deleted in the
+         * same transaction, like a saved location the user removed. See buildReplaceUri.
+         */
+        public static final String QUERY_PARAMETER_REMOVE_LOCATION = "remove_location";
+
         /* Min and max temperatures in °C for the day (stored as floats in the database) */
         public static final String COLUMN_MIN_TEMP = "min";
         public static final String COLUMN_MAX_TEMP = "max";
@@ -123,16 +152,100 @@ public class WeatherContract {
                     .build();
         }
 
+        /**
+         * Builds a URI for a bulkInsert that replaces, in a single transaction, all the weather
+         * stored for each location the inserted rows belong to. Locations that have no rows in
+         * the insert are left alone. This is how a sync writes several locations' forecasts at
+         * once, without the forecast list ever seeing the table half empty.
+         *
+         * @return Uri to bulkInsert replacement forecasts into
+         */
+        public static Uri buildReplaceUri() {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_REPLACE, "true")
+                    .build();
+        }
+
+        /**
+         * Builds a replace URI, like {@link #buildReplaceUri()}, that also deletes every row of
+         * the removed locations in the same transaction. The bulkInsert may have no rows at all,
+         * to only remove locations.
+         *
+         * @param removedLocations Locations whose rows should be deleted
+         * @return Uri to bulkInsert replacement forecasts into
+         */
+        public static Uri buildReplaceUri(Collection<String> removedLocations) {
+            Uri.Builder builder = buildReplaceUri().buildUpon();
+            for (String location : removedLocations) {
+                builder.appendQueryParameter(QUERY_PARAMETER_REMOVE_LOCATION, location);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Returns just the selection part of the weather query that picks the rows of the
+         * preferred location. Saved locations are in the same table, so any query for what the
+         * user sees needs this.
+         *
+         * @return The selection part of the weather query for the preferred location
+         */
+        public static String getSqlSelectForPreferredLocation() {
+            return COLUMN_LOCATION + " = '" + PREFERRED_LOCATION + "'";
+        }
+
         /**
          * Returns just the selection part of the weather query from a normalized today value.
-         * This is used to get a weather forecast from today's date. To make this easy to use
-         * in compound selection, we embed today's date as an argument in the query.
+         * This is used to get the preferred location's forecast from today's date. To make this
+         * easy to use in compound selection, we embed today's date as an argument in the query.
          *
          * @return The selection part of the weather query for today onwards
          */
         public static String getSqlSelectForTodayOnwards() {
             long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
-            return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
+            return getSqlSelectForPreferredLocation() + " AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the table contents of the sync metadata table. It has one row for
+     * every location that has rows in the weather table, summarizing them: how many there are,
+     * which dates they cover and when they were written. WeatherProvider keeps it up to date in
+     * the same transaction as every write to the weather table, so reading one row here answers
+     * "what do we have for this location?" without scanning the weather table.
+     *
+     * It also holds the HTTP validators of the response the rows were parsed from, so the next
+     * sync can ask the server whether anything changed instead of downloading it all again.
+     */
+    public static final class SyncMetadataEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query and update the sync metadata table */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SYNC_METADATA)
+                .build();
+
+        /* Used internally as the name of our sync metadata table. */
+        public static final String TABLE_NAME = "sync_metadata";
+
+        /* The location the row describes, the same value as WeatherEntry.COLUMN_LOCATION */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* When the location's rows were last written, in System.currentTimeMillis() time */
+        public static final String COLUMN_LAST_UPDATED = "last_updated";
+
+        /* How many rows the weather table has for the location */
+        public static final String COLUMN_ROW_COUNT = "row_count";
+
+        /* The normalized dates of the location's first and last rows */
+        public static final String COLUMN_FIRST_DATE = "first_date";
+        public static final String COLUMN_LAST_DATE = "last_date";
+
+        /*
+         * The ETag and Last-Modified headers of the response the location's rows came from, or
+         * null if the server didn't send them. Any write to the location's rows clears them,
+         * since they no longer describe what's stored; the sync sets them again after its write.
+         */
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+    }
+}
@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.data.WeatherContract.SyncMetadataEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -42,8 +43,11 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of Sunshine could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * Version 4 added the location column, so the table can hold more than one location.
+     * Version 5 added the sync metadata table.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 5;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -77,6 +81,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"                  +
 
+                /* Rows inserted without a location are the preferred location's */
+                WeatherEntry.COLUMN_LOCATION   + " TEXT NOT NULL DEFAULT '"
+                        + WeatherEntry.PREFERRED_LOCATION + "', "                      +
+
                 WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
                 WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
 
@@ -87,27 +95,54 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
 
                 /*
-                 * To ensure this table can only contain one weather entry per date, we declare
-                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                 * SQLite that if we have a weather entry for a certain date and we attempt to
-                 * insert another weather entry with that date, we replace the old weather entry.
+                 * To ensure this table can only contain one weather entry per date for each
+                 * location, we declare the location and date columns to be unique together. We
+                 * also specify "ON CONFLICT REPLACE". This tells SQLite that if we have a weather
+                 * entry for a certain location and date and we attempt to insert another weather
+                 * entry for them, we replace the old weather entry. The location comes first, so
+                 * the index that enforces this also serves queries for one location's dates.
                  */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+                " UNIQUE (" + WeatherEntry.COLUMN_LOCATION + ", " + WeatherEntry.COLUMN_DATE
+                        + ") ON CONFLICT REPLACE);";
 
         /*
          * After we've spelled out our SQLite table creation statement above, we actually execute
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        /*
+         * The sync metadata table summarizes the weather table, one row per location, so the
+         * location is its key. WeatherProvider fills it in as it writes weather rows.
+         */
+        final String SQL_CREATE_SYNC_METADATA_TABLE =
+
+                "CREATE TABLE " + SyncMetadataEntry.TABLE_NAME + " (" +
+
+                SyncMetadataEntry._ID                  + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                SyncMetadataEntry.COLUMN_LOCATION      + " TEXT NOT NULL UNIQUE, "             +
+
+                SyncMetadataEntry.COLUMN_LAST_UPDATED  + " INTEGER NOT NULL, "                 +
+                SyncMetadataEntry.COLUMN_ROW_COUNT     + " INTEGER NOT NULL, "                 +
+                SyncMetadataEntry.COLUMN_FIRST_DATE    + " INTEGER NOT NULL, "                 +
+                SyncMetadataEntry.COLUMN_LAST_DATE     + " INTEGER NOT NULL, "                 +
+
+                SyncMetadataEntry.COLUMN_ETAG          + " TEXT, "                             +
+                SyncMetadataEntry.COLUMN_LAST_MODIFIED + " TEXT);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METADATA_TABLE);
     }
 
     /**
      * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * the data and call through to onCreate to recreate the tables. The sync metadata is dropped
+     * along with the weather it describes, so the two can never disagree. Note that this only
+     * fires if you change the version number for your database (in our case, DATABASE_VERSION).
+     * It does NOT depend on the version number for your application found in your
+     * app/build.gradle file. If you want to update the schema without wiping data, commenting
+     * out the current body of this method should be your top priority before modifying this
+     * method.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -116,6 +151,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncMetadataEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+
+/**
+ * {@link WeatherDetails} is an immutable copy of every column of a single day of weather. This
+ * is what the detail screen displays.
+ */
+public final class WeatherDetails {
+
+    /*
+     * The columns of data that we need to build a WeatherDetails. Queries whose results will be
+     * turned into WeatherDetails using fromCursor must use this projection.
+     */
+    public static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    /*
+     * We store the indices of the values in the array of Strings above to more quickly be able
+     * to access the data from our query. If the order of the Strings above changes, these
+     * indices must be adjusted to match the order of the Strings.
+     */
+    public static final int INDEX_WEATHER_DATE = 0;
+    public static final int INDEX_WEATHER_MAX_TEMP = 1;
+    public static final int INDEX_WEATHER_MIN_TEMP = 2;
+    public static final int INDEX_WEATHER_HUMIDITY = 3;
+    public static final int INDEX_WEATHER_PRESSURE = 4;
+    public static final int INDEX_WEATHER_WIND_SPEED = 5;
+    public static final int INDEX_WEATHER_DEGREES = 6;
+    public static final int INDEX_WEATHER_CONDITION_ID = 7;
+
+    public final long date;
+    public final int weatherId;
+    public final double high;
+    public final double low;
+    public final float humidity;
+    public final float pressure;
+    public final float windSpeed;
+    public final float degrees;
+
+    private WeatherDetails(Cursor cursor) {
+        date = cursor.getLong(INDEX_WEATHER_DATE);
+        weatherId = cursor.getInt(INDEX_WEATHER_CONDITION_ID);
+        high = cursor.getDouble(INDEX_WEATHER_MAX_TEMP);
+        low = cursor.getDouble(INDEX_WEATHER_MIN_TEMP);
+        humidity = cursor.getFloat(INDEX_WEATHER_HUMIDITY);
+        pressure = cursor.getFloat(INDEX_WEATHER_PRESSURE);
+        windSpeed = cursor.getFloat(INDEX_WEATHER_WIND_SPEED);
+        degrees = cursor.getFloat(INDEX_WEATHER_DEGREES);
+    }
+
+    /**
+     * Copies the row the Cursor is currently positioned on. The Cursor must have been queried
+     * with {@link #PROJECTION}. The Cursor is left open; closing it is the caller's
+     * responsibility.
+     *
+     * @param cursor A Cursor positioned on a valid row
+     * @return The weather details of that row
+     */
+    public static WeatherDetails fromCursor(Cursor cursor) {
+        return new WeatherDetails(cursor);
+    }
+}
@@ -20,12 +20,20 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.data.WeatherContract.SyncMetadataEntry;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -35,6 +43,9 @@ import com.example.android.sunshine.utilities.SunshineDateUtils;
  * However, here, they are not implemented for the sake of brevity and simplicity. If you would
  * like, you may implement them on your own. However, we are not going to be teaching how to do
  * so in this course.
+ * <p>
+ * The one exception is updates to the sync metadata table, which WeatherProvider otherwise
+ * maintains itself as the weather table is written.
  */
 public class WeatherProvider extends ContentProvider {
 
@@ -45,6 +56,7 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_SYNC_METADATA = 200;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -54,6 +66,25 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * Incremented every time a write actually changes the weather table. Readers that cache
+     * query results (such as ForecastRepository) compare this against the version their cache
+     * was built from, which lets them skip a query when a change notification turns out to be
+     * about data they have already read. WeatherProvider isn't exported, so every writer lives
+     * in this process and sees the same counter.
+     */
+    private static final AtomicLong sDataVersion = new AtomicLong();
+
+    /**
+     * Returns a number that changes whenever the contents of the weather table change. The
+     * value itself has no meaning; only whether it differs from a previously read value.
+     *
+     * @return The current version of the weather data
+     */
+    public static long getDataVersion() {
+        return sDataVersion.get();
+    }
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -96,6 +127,9 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/sync_metadata/ */
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_METADATA, CODE_SYNC_METADATA);
+
         return matcher;
     }
 
@@ -132,6 +166,16 @@ public class WeatherProvider extends ContentProvider {
      * implement bulkInsert. In a normal ContentProvider's implementation, you will probably want
      * to provide proper functionality for the insert method as well.
      *
+     * <p>
+     * If the URI was built by {@link WeatherContract.WeatherEntry#buildReplaceUri()}, the rows
+     * already stored for every location in values are deleted first, in the same transaction.
+     * Anyone reading the table sees either the old forecasts or the new ones, never a mix, and
+     * only one change notification is sent for the whole write. The locations the URI names as
+     * removed have their rows deleted in the same transaction too.
+     * <p>
+     * Every location's row in the sync metadata table is brought up to date in the same
+     * transaction, so it always agrees with the weather table.
+     *
      * @param uri    The content:// URI of the insertion request.
      * @param values An array of sets of column_name/value pairs to add to the database.
      *               This must not be {@code null}.
@@ -145,9 +189,36 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
+                boolean replace = "true".equals(uri.getQueryParameter(
+                        WeatherContract.WeatherEntry.QUERY_PARAMETER_REPLACE));
+
+                /* The first and last date of each location's rows in values */
+                Map<String, long[]> dateRanges = getDateRanges(values);
+                long now = System.currentTimeMillis();
+
                 db.beginTransaction();
                 int rowsInserted = 0;
+                int rowsDeleted = 0;
                 try {
+                    if (replace) {
+                        Set<String> locations = new HashSet<>(dateRanges.keySet());
+                        locations.addAll(uri.getQueryParameters(
+                                WeatherContract.WeatherEntry.QUERY_PARAMETER_REMOVE_LOCATION));
+                        rowsDeleted = deleteLocations(db, locations);
+                    }
+
+                    /*
+                     * Rows already in each location's date range are the only ones the insert
+                     * can replace. Counting them before and after tells us how many rows the
+                     * insert added, without counting every row the location has.
+                     */
+                    Map<String, Long> rowsBefore = new HashMap<>();
+                    for (Map.Entry<String, long[]> dateRange : dateRanges.entrySet()) {
+                        rowsBefore.put(dateRange.getKey(), replace
+                                ? 0
+                                : countRows(db, dateRange.getKey(), dateRange.getValue()));
+                    }
+
                     for (ContentValues value : values) {
                         long weatherDate =
                                 value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
@@ -160,13 +231,24 @@ public class WeatherProvider extends ContentProvider {
                             rowsInserted++;
                         }
                     }
+
+                    for (Map.Entry<String, long[]> dateRange : dateRanges.entrySet()) {
+                        String location = dateRange.getKey();
+                        long rowsAdded = countRows(db, location, dateRange.getValue())
+                                - rowsBefore.get(location);
+                        updateSyncMetadata(db, location, dateRange.getValue(), rowsAdded,
+                                replace, now);
+                    }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
 
-                if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                /* Notify the plain URI; observers don't know about the query parameter */
+                if (rowsInserted > 0 || rowsDeleted > 0) {
+                    sDataVersion.incrementAndGet();
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.WeatherEntry.CONTENT_URI, null);
                 }
 
                 return rowsInserted;
@@ -176,6 +258,185 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Finds the locations that values has rows for, and the first and last date of each one's
+     * rows. Rows without a location are the preferred location's.
+     *
+     * @return The {first date, last date} of every location in values
+     */
+    private static Map<String, long[]> getDateRanges(ContentValues[] values) {
+        Map<String, long[]> dateRanges = new HashMap<>();
+        for (ContentValues value : values) {
+            String location = value.getAsString(WeatherContract.WeatherEntry.COLUMN_LOCATION);
+            if (location == null) {
+                location = WeatherContract.WeatherEntry.PREFERRED_LOCATION;
+            }
+            long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+            long[] dateRange = dateRanges.get(location);
+            if (dateRange == null) {
+                dateRanges.put(location, new long[]{date, date});
+            } else {
+                dateRange[0] = Math.min(dateRange[0], date);
+                dateRange[1] = Math.max(dateRange[1], date);
+            }
+        }
+        return dateRanges;
+    }
+
+    /* Counts a location's rows from the first to the last date of dateRange */
+    private static long countRows(SQLiteDatabase db, String location, long[] dateRange) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME
+                        + " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOCATION + " = ?"
+                        + " AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{location, Long.toString(dateRange[0]), Long.toString(dateRange[1])});
+    }
+
+    /**
+     * Deletes every row stored for the locations, and their sync metadata. Must be called inside
+     * the transaction that inserts their new rows; locations that get new rows get new metadata
+     * along with them.
+     *
+     * @return The number of rows deleted
+     */
+    private static int deleteLocations(SQLiteDatabase db, Set<String> locations) {
+        int rowsDeleted = 0;
+        for (String location : locations) {
+            rowsDeleted += db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                    WeatherContract.WeatherEntry.COLUMN_LOCATION + " = ?",
+                    new String[]{location});
+            db.delete(SyncMetadataEntry.TABLE_NAME,
+                    SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                    new String[]{location});
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Brings a location's sync metadata up to date after rows were inserted for it. Must be
+     * called inside the transaction that inserted them.
+     *
+     * @param dateRange The first and last date of the inserted rows
+     * @param rowsAdded How many rows the location has now that it didn't have before
+     * @param replaced  True if the location's old rows were deleted before the insert
+     * @param now       The current System.currentTimeMillis()
+     */
+    private static void updateSyncMetadata(SQLiteDatabase db, String location, long[] dateRange,
+                                           long rowsAdded, boolean replaced, long now) {
+        long rowCount = rowsAdded;
+        long firstDate = dateRange[0];
+        long lastDate = dateRange[1];
+
+        /* Inserting only ever adds rows, so the dates they cover can only grow */
+        if (!replaced) {
+            Cursor cursor = db.query(SyncMetadataEntry.TABLE_NAME,
+                    new String[]{
+                            SyncMetadataEntry.COLUMN_ROW_COUNT,
+                            SyncMetadataEntry.COLUMN_FIRST_DATE,
+                            SyncMetadataEntry.COLUMN_LAST_DATE},
+                    SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                    new String[]{location},
+                    null,
+                    null,
+                    null);
+            try {
+                if (cursor.moveToFirst()) {
+                    rowCount += cursor.getLong(0);
+                    firstDate = Math.min(firstDate, cursor.getLong(1));
+                    lastDate = Math.max(lastDate, cursor.getLong(2));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        writeSyncMetadata(db, location, rowCount, firstDate, lastDate, now);
+    }
+
+    /**
+     * Counts every location's rows again after a delete. A delete can match any rows, so unlike
+     * an insert there is no cheaper way to find out what it changed. Deletes are rare; syncs
+     * replace old weather through bulkInsert instead.
+     *
+     * @param now The current System.currentTimeMillis()
+     */
+    private static void recountSyncMetadata(SQLiteDatabase db, long now) {
+        Map<String, Long> oldRowCounts = new HashMap<>();
+        Cursor cursor = db.query(SyncMetadataEntry.TABLE_NAME,
+                new String[]{SyncMetadataEntry.COLUMN_LOCATION, SyncMetadataEntry.COLUMN_ROW_COUNT},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                oldRowCounts.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Set<String> remainingLocations = new HashSet<>();
+        cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_LOCATION,
+                        "COUNT(*)",
+                        "MIN(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")",
+                        "MAX(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")"},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_LOCATION,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                String location = cursor.getString(0);
+                long rowCount = cursor.getLong(1);
+                remainingLocations.add(location);
+
+                /* Leave locations the delete didn't touch alone, validators and all */
+                Long oldRowCount = oldRowCounts.get(location);
+                if (oldRowCount == null || oldRowCount != rowCount) {
+                    writeSyncMetadata(db, location, rowCount, cursor.getLong(2),
+                            cursor.getLong(3), now);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String location : oldRowCounts.keySet()) {
+            if (!remainingLocations.contains(location)) {
+                db.delete(SyncMetadataEntry.TABLE_NAME,
+                        SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                        new String[]{location});
+            }
+        }
+    }
+
+    /*
+     * Replaces a location's sync metadata row, or deletes it if the location has no rows left.
+     * The validators are cleared, because the rows are no longer the ones they describe.
+     */
+    private static void writeSyncMetadata(SQLiteDatabase db, String location, long rowCount,
+                                          long firstDate, long lastDate, long now) {
+        if (rowCount <= 0) {
+            db.delete(SyncMetadataEntry.TABLE_NAME,
+                    SyncMetadataEntry.COLUMN_LOCATION + " = ?",
+                    new String[]{location});
+            return;
+        }
+
+        ContentValues metadata = new ContentValues();
+        metadata.put(SyncMetadataEntry.COLUMN_LOCATION, location);
+        metadata.put(SyncMetadataEntry.COLUMN_LAST_UPDATED, now);
+        metadata.put(SyncMetadataEntry.COLUMN_ROW_COUNT, rowCount);
+        metadata.put(SyncMetadataEntry.COLUMN_FIRST_DATE, firstDate);
+        metadata.put(SyncMetadataEntry.COLUMN_LAST_DATE, lastDate);
+        metadata.putNull(SyncMetadataEntry.COLUMN_ETAG);
+        metadata.putNull(SyncMetadataEntry.COLUMN_LAST_MODIFIED);
+        db.insertWithOnConflict(SyncMetadataEntry.TABLE_NAME, null, metadata,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -251,8 +512,12 @@ public class WeatherProvider extends ContentProvider {
                          * argument for performance reasons. Whatever Strings are contained
                          * within the selectionArguments array will be inserted into the
                          * selection statement by SQLite under the hood.
+                         *
+                         * Every location can have a row for this date. A date URI is always
+                         * about the preferred location, which is the one the user is looking at.
                          */
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        WeatherContract.WeatherEntry.getSqlSelectForPreferredLocation() + " AND "
+                                + WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
                         selectionArguments,
                         null,
                         null,
@@ -285,6 +550,23 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * The sync metadata table is small, one row per location, so it's queried as is.
+             * Select by SyncMetadataEntry.COLUMN_LOCATION to read a single location's row.
+             */
+            case CODE_SYNC_METADATA: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        SyncMetadataEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -319,10 +601,23 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        selection,
-                        selectionArgs);
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+                /* The sync metadata is recounted in the same transaction as the delete */
+                db.beginTransaction();
+                try {
+                    numRowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            selection,
+                            selectionArgs);
+
+                    if (numRowsDeleted != 0) {
+                        recountSyncMetadata(db, System.currentTimeMillis());
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
 
                 break;
 
@@ -332,6 +627,7 @@ public class WeatherProvider extends ContentProvider {
 
         /* If we actually deleted any rows, notify that a change has occurred to this URI */
         if (numRowsDeleted != 0) {
+            sDataVersion.incrementAndGet();
             getContext().getContentResolver().notifyChange(uri, null);
         }
 
@@ -370,9 +666,31 @@ public class WeatherProvider extends ContentProvider {
                 "We are not implementing insert in Sunshine. Use bulkInsert instead");
     }
 
+    /**
+     * Updates rows of the sync metadata table. This is how a sync stores the HTTP validators of
+     * the responses it just wrote to the weather table. The weather table itself is only ever
+     * written through {@link WeatherProvider#bulkInsert}, so updating it isn't implemented.
+     *
+     * @param uri           {@link SyncMetadataEntry#CONTENT_URI}
+     * @param values        The columns to change, and their new values
+     * @param selection     An optional restriction to apply to rows when updating
+     * @param selectionArgs Used in conjunction with the selection statement
+     * @return The number of rows updated
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_SYNC_METADATA:
+                return mOpenHelper.getWritableDatabase().update(
+                        SyncMetadataEntry.TABLE_NAME,
+                        values,
+                        selection,
+                        selectionArgs);
+
+            default:
+                throw new RuntimeException("We are not implementing update in Sunshine");
+        }
     }
 
     /**
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FreshnessPolicy} decides how old a location's forecast can get before it is worth
+ * fetching again. It remembers when each location last synced successfully, and gives each
+ * location two time-to-live values:
+ * <p>
+ * Within the soft TTL, the forecast is {@link #FRESH} and syncing again would only fetch what
+ * we already have. Past the soft TTL it is {@link #STALE}: it is still shown as it is, without
+ * waiting, but a sync is started in the background to revalidate it. Past the hard TTL it is
+ * {@link #EXPIRED}, and the forecast list tells the user how old it is, so old weather is never
+ * passed off as current.
+ * <p>
+ * A location that has never synced, or whose forecast has been invalidated (because the
+ * preferred location changed), is EXPIRED.
+ * <p>
+ * Everything is kept in the default SharedPreferences under keys starting with
+ * {@link #PREF_PREFIX}, so screens can listen for changes to know when to look again.
+ */
+public final class FreshnessPolicy {
+
+    /* Younger than the soft TTL */
+    public static final int FRESH = 0;
+    /* Older than the soft TTL: show it, and revalidate in the background */
+    public static final int STALE = 1;
+    /* Older than the hard TTL, or never synced: show it as out of date, and revalidate */
+    public static final int EXPIRED = 2;
+
+    /*
+     * The periodic sync runs about one interval after the last one, but the success is only
+     * recorded once that sync finishes. Going stale a flex time before the interval is up leaves
+     * room for that, so a periodic sync that runs on time always finds the forecast STALE and is
+     * never skipped.
+     */
+    public static final long DEFAULT_SOFT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(
+            SunshineSyncUtils.SYNC_INTERVAL_SECONDS - SunshineSyncUtils.SYNC_FLEXTIME_SECONDS);
+    public static final long DEFAULT_HARD_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    public static final String PREF_PREFIX = "freshness_";
+
+    private static final String PREF_LAST_SYNC = PREF_PREFIX + "last_sync_";
+    private static final String PREF_SYNC_FAILED = PREF_PREFIX + "sync_failed_";
+    private static final String PREF_SOFT_TTL = PREF_PREFIX + "soft_ttl_";
+    private static final String PREF_HARD_TTL = PREF_PREFIX + "hard_ttl_";
+
+    private static FreshnessPolicy sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    FreshnessPolicy(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    public static synchronized FreshnessPolicy getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FreshnessPolicy(PreferenceManager
+                    .getDefaultSharedPreferences(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Records that a location's forecast was just written to the database, or that the server
+     * just confirmed the one in the database is current.
+     *
+     * @param location  The location, as stored in WeatherEntry.COLUMN_LOCATION
+     * @param nowMillis The current System.currentTimeMillis()
+     */
+    public void onSyncSucceeded(String location, long nowMillis) {
+        mPreferences.edit()
+                .putLong(PREF_LAST_SYNC + location, nowMillis)
+                .remove(PREF_SYNC_FAILED + location)
+                .apply();
+    }
+
+    /**
+     * Records that the latest sync of a location ended without a forecast. The forecast's age is
+     * left as it was; this only tells screens that the sync they were waiting for is over, until
+     * the next one succeeds or the location is invalidated again.
+     *
+     * @param location The location, as stored in WeatherEntry.COLUMN_LOCATION
+     */
+    public void onSyncFailed(String location) {
+        mPreferences.edit().putBoolean(PREF_SYNC_FAILED + location, true).apply();
+    }
+
+    /**
+     * @return True if the latest sync of the location failed, and none has succeeded since
+     */
+    public boolean hasSyncFailed(String location) {
+        return mPreferences.getBoolean(PREF_SYNC_FAILED + location, false);
+    }
+
+    /**
+     * Forgets when a location last synced, which makes its forecast EXPIRED until the next
+     * successful sync. Used when the forecast in the database no longer belongs to the location,
+     * like right after the user picks a new preferred location.
+     */
+    public void invalidate(String location) {
+        mPreferences.edit()
+                .remove(PREF_LAST_SYNC + location)
+                .remove(PREF_SYNC_FAILED + location)
+                .apply();
+    }
+
+    /**
+     * @return When the location last synced successfully, in System.currentTimeMillis() time,
+     * or 0 if it never has or has been invalidated since
+     */
+    public long getLastSyncMillis(String location) {
+        return mPreferences.getLong(PREF_LAST_SYNC + location, 0);
+    }
+
+    /**
+     * Sets how long a location's forecast stays fresh, and how long until it's out of date.
+     * Locations the user only glances at can use longer TTLs, and sync less.
+     *
+     * @param location      The location, as stored in WeatherEntry.COLUMN_LOCATION
+     * @param softTtlMillis How long after a sync the forecast is revalidated
+     * @param hardTtlMillis How long after a sync the forecast is shown as out of date. Must be
+     *                      at least softTtlMillis.
+     */
+    public void setTtl(String location, long softTtlMillis, long hardTtlMillis) {
+        if (hardTtlMillis < softTtlMillis) {
+            throw new IllegalArgumentException("Hard TTL must be at least the soft TTL");
+        }
+        mPreferences.edit()
+                .putLong(PREF_SOFT_TTL + location, softTtlMillis)
+                .putLong(PREF_HARD_TTL + location, hardTtlMillis)
+                .apply();
+    }
+
+    public long getSoftTtlMillis(String location) {
+        return mPreferences.getLong(PREF_SOFT_TTL + location, DEFAULT_SOFT_TTL_MILLIS);
+    }
+
+    public long getHardTtlMillis(String location) {
+        return mPreferences.getLong(PREF_HARD_TTL + location, DEFAULT_HARD_TTL_MILLIS);
+    }
+
+    /**
+     * @param location  The location, as stored in WeatherEntry.COLUMN_LOCATION
+     * @param nowMillis The current System.currentTimeMillis()
+     * @return {@link #FRESH}, {@link #STALE} or {@link #EXPIRED}
+     */
+    public int getFreshness(String location, long nowMillis) {
+        long lastSync = getLastSyncMillis(location);
+        if (lastSync == 0) {
+            return EXPIRED;
+        }
+
+        /* A sync in the future means the clock was set back; we can't tell how old it really is */
+        long age = nowMillis - lastSync;
+        if (age < 0) {
+            return STALE;
+        }
+
+        if (age >= getHardTtlMillis(location)) {
+            return EXPIRED;
+        }
+        if (age >= getSoftTtlMillis(location)) {
+            return STALE;
+        }
+        return FRESH;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.data.SyncMetadata;
+import com.example.android.sunshine.utilities.NetworkUtils;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ParallelForecastFetcher} fetches the forecasts of several locations at the same time,
+ * so a sync of N locations takes about as long as the slowest one rather than all of them added
+ * up. Almost all of a fetch is spent waiting on the network, so running them side by side costs
+ * little more than running one.
+ * <p>
+ * Two limits keep this from turning into a flood of connections. The executor never runs more
+ * than {@link #MAX_CONCURRENT_FETCHES} fetches at once, and no more than
+ * {@link #MAX_FETCHES_PER_HOST} of them go to the same host, which is as many connections as
+ * browsers open to one server. Fetches over the limits wait their turn. A fetch waiting for its
+ * host is kept in that host's queue, not on a thread, so it never holds up fetches to other
+ * hosts; it's handed to the executor when one of its host's fetches finishes.
+ * <p>
+ * The threads are shared by every sync, and go away when they have been idle for a while, so
+ * there is no cost between syncs.
+ * <p>
+ * A location whose stored forecast came with validators is fetched conditionally, so if the
+ * forecast hasn't changed, the server answers 304 Not Modified instead of sending it again.
+ */
+class ParallelForecastFetcher {
+
+    static final int MAX_CONCURRENT_FETCHES = 8;
+    static final int MAX_FETCHES_PER_HOST = 6;
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+    /* Guarded by itself */
+    private static final Map<String, HostQueue> sHostQueues = new HashMap<>();
+
+    /* The fetches of one host: how many are running, and the ones waiting for a turn */
+    private static final class HostQueue {
+        int running;
+        final Queue<Runnable> waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * The outcome of fetching one location: either the response, or what went wrong.
+     */
+    static final class Result {
+        final NetworkUtils.HttpResponse response;
+        final Exception error;
+
+        Result(NetworkUtils.HttpResponse response, Exception error) {
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    private ParallelForecastFetcher() {
+    }
+
+    /**
+     * Fetches every URL, at the same time as far as the limits allow, and waits for all of them
+     * to finish. A fetch that fails doesn't affect the others. A single URL is fetched on the
+     * calling thread, since there is nothing to run it alongside.
+     *
+     * @param urls       The URL to fetch for each location
+     * @param validators The metadata of the forecasts we have for the locations. Locations in
+     *                   here that have validators are fetched conditionally.
+     * @return The result for each location, in the same order as urls
+     */
+    static Map<String, Result> fetchAll(Map<String, URL> urls,
+                                        Map<String, SyncMetadata> validators)
+            throws InterruptedException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        /*
+         * A single fetch can't go over the per-host limit by itself, and SunshineSyncTask never
+         * runs two syncs at once, so it's run directly.
+         */
+        if (urls.size() == 1) {
+            Map.Entry<String, URL> only = urls.entrySet().iterator().next();
+            results.put(only.getKey(),
+                    fetch(only.getValue(), validators.get(only.getKey())));
+            return results;
+        }
+
+        List<String> locations = new ArrayList<>(urls.keySet());
+        List<Future<Result>> futures = new ArrayList<>(urls.size());
+        for (final Map.Entry<String, URL> url : urls.entrySet()) {
+            final SyncMetadata metadata = validators.get(url.getKey());
+            FutureTask<Result> future = new FutureTask<>(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    return fetch(url.getValue(), metadata);
+                }
+            });
+            futures.add(future);
+            execute(url.getValue().getHost(), future);
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                results.put(locations.get(i), getResult(futures.get(i)));
+            }
+        } finally {
+            /* If we were interrupted, don't leave fetches running that nobody will look at */
+            for (Future<Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static Result getResult(Future<Result> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            /* fetch catches everything it expects, so this is a bug; report it like a failure */
+            Throwable cause = e.getCause();
+            return new Result(null, cause instanceof Exception
+                    ? (Exception) cause
+                    : new RuntimeException(cause));
+        }
+    }
+
+    private static Result fetch(URL url, SyncMetadata metadata) {
+        String eTag = metadata != null ? metadata.eTag : null;
+        String lastModified = metadata != null ? metadata.lastModified : null;
+
+        try {
+            return new Result(NetworkUtils.getResponseFromHttpUrl(url, eTag, lastModified), null);
+        } catch (Exception e) {
+            return new Result(null, e);
+        }
+    }
+
+    /*
+     * Hands a fetch to the executor if its host has a free slot, and otherwise queues it behind
+     * the host's running fetches. A cancelled fetch still goes through here, but does nothing
+     * when it runs.
+     */
+    private static void execute(final String host, final Runnable fetch) {
+        synchronized (sHostQueues) {
+            HostQueue hostQueue = sHostQueues.get(host);
+            if (hostQueue == null) {
+                hostQueue = new HostQueue();
+                sHostQueues.put(host, hostQueue);
+            }
+            if (hostQueue.running >= MAX_FETCHES_PER_HOST) {
+                hostQueue.waiting.add(fetch);
+                return;
+            }
+            hostQueue.running++;
+        }
+        sExecutor.execute(runThenStartNext(host, fetch));
+    }
+
+    /* Runs a fetch, then gives its host's slot to the next fetch waiting for it */
+    private static Runnable runThenStartNext(final String host, final Runnable fetch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fetch.run();
+                } finally {
+                    Runnable next;
+                    synchronized (sHostQueues) {
+                        HostQueue hostQueue = sHostQueues.get(host);
+                        next = hostQueue.waiting.poll();
+                        if (next == null) {
+                            hostQueue.running--;
+                        }
+                    }
+                    if (next != null) {
+                        sExecutor.execute(runThenStartNext(host, next));
+                    }
+                }
+            }
+        };
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONCURRENT_FETCHES,
+                MAX_CONCURRENT_FETCHES,
+                THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable,
+                                "ForecastFetch-" + threadCount.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
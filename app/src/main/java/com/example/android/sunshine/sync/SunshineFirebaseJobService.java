@@ -45,11 +45,30 @@ public class SunshineFirebaseJobService extends JobService {
             @Override
             protected Void doInBackground(Void... voids) {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
+
+                /*
+                 * While the server keeps failing, don't use the radio on it at all. The circuit
+                 * closes on its own, and the next periodic sync will try again.
+                 */
+                if (SyncRetryPolicy.getInstance(context)
+                        .isCircuitOpen(System.currentTimeMillis())) {
+                    return null;
+                }
+
+                /* If every forecast is still fresh, a sync would only fetch what we already have */
+                if (!SunshineSyncUtils.needsRevalidation(context)) {
+                    return null;
+                }
+
+                int result = SunshineSyncTask.syncWeather(context);
+                SunshineSyncUtils.onSyncFinished(context, result);
                 return null;
             }
 
+            /*
+             * The Job is finished exactly once, here. It never asks to be rescheduled, because
+             * onSyncFinished has already scheduled a retry if SyncRetryPolicy wanted one.
+             */
             @Override
             protected void onPostExecute(Void aVoid) {
                 jobFinished(jobParameters, false);
@@ -30,6 +30,12 @@ public class SunshineSyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SunshineSyncTask.syncWeather(this);
+        /*
+         * An immediate sync is one the app asked for, like the first sync or one after the
+         * location changed, so it goes to the network even if the circuit is open. How it ends
+         * still counts: a success closes the circuit, and a failure schedules a retry.
+         */
+        int result = SunshineSyncTask.syncWeather(this);
+        SunshineSyncUtils.onSyncFinished(this, result);
     }
 }
\ No newline at end of file
@@ -15,69 +15,189 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncMetadata;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.genenakagaki.shared.OpenWeatherForecast;
 import com.google.android.gms.common.api.GoogleApiClient;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
     /**
-     * Performs the network request for updated weather, parses the JSON from that request, and
+     * Performs the network requests for updated weather, parses the JSON from those requests, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * The preferred location's forecast is fetched along with the forecast of every saved
+     * location. The fetches run in parallel through {@link ParallelForecastFetcher}, and every
+     * forecast that arrived is written to the ContentProvider in one transaction.
+     * <p>
+     * Locations whose forecast came with HTTP validators are fetched conditionally. If the server
+     * says nothing changed, the forecast we have is kept as it is and counts as synced.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @return How the sync of the preferred location ended, as one of SyncRetryPolicy's RESULT_
+     * codes. Saved locations that fail are left as they were until the next sync.
      */
-    synchronized public static void syncWeather(Context context) {
+    synchronized public static int syncWeather(Context context) {
 
         try {
             /*
              * The getUrl method will return the URL that we need to get the forecast JSON for the
              * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
+             * longitude or off of a simple location as a String. Saved locations are always
+             * looked up by their String.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
-
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            Map<String, URL> weatherRequestUrls = new LinkedHashMap<>();
+            weatherRequestUrls.put(WeatherContract.WeatherEntry.PREFERRED_LOCATION,
+                    NetworkUtils.getUrl(context));
+            for (String location : SunshinePreferences.getSavedLocations(context)) {
+                weatherRequestUrls.put(location, NetworkUtils.getUrlForLocation(context, location));
+            }
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            /*
+             * The validators of the forecasts we already have. A location whose forecast was
+             * invalidated, like a preferred location the user just changed, is fetched in full;
+             * its validators belong to the forecast of another place.
+             *
+             * The rows are dated from the day the response was parsed on. Once the day has
+             * rolled over, a 304 would keep rows that start yesterday, so a forecast that
+             * doesn't start today is fetched in full as well, to be dated again.
+             */
+            FreshnessPolicy freshnessPolicy = FreshnessPolicy.getInstance(context);
+            Map<String, SyncMetadata> storedMetadata = SyncMetadata.queryAll(context);
+            long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+            Map<String, SyncMetadata> validators = new HashMap<>();
+            for (SyncMetadata metadata : storedMetadata.values()) {
+                if (metadata.hasValidators()
+                        && metadata.firstDate == today
+                        && freshnessPolicy.getLastSyncMillis(metadata.location) != 0) {
+                    validators.put(metadata.location, metadata);
+                }
+            }
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
+             * Every location with rows has metadata, so any location in there that we aren't
+             * syncing is a saved location the user removed. Its rows go in the same write.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
-
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
-
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
+            List<String> removedLocations = new ArrayList<>();
+            for (String location : storedMetadata.keySet()) {
+                if (!weatherRequestUrls.containsKey(location)) {
+                    removedLocations.add(location);
+                }
+            }
+
+            /* Use the URLs to retrieve the JSON */
+            Map<String, ParallelForecastFetcher.Result> jsonWeatherResponses =
+                    ParallelForecastFetcher.fetchAll(weatherRequestUrls, validators);
+
+            /* Parse the JSON into one list of weather values for every location */
+            List<ContentValues> weatherValues = new ArrayList<>();
+            List<String> syncedLocations = new ArrayList<>();
+            List<String> writtenLocations = new ArrayList<>();
+            List<String> failedLocations = new ArrayList<>();
+            int result = SyncRetryPolicy.RESULT_SUCCESS;
+            int preferredDayCount = 0;
+            for (Map.Entry<String, ParallelForecastFetcher.Result> response
+                    : jsonWeatherResponses.entrySet()) {
+                String location = response.getKey();
+                int valueCount = weatherValues.size();
+                int locationResult = parseForecast(context, location, response.getValue(),
                         weatherValues);
 
-                SunshineSyncUtils.sendWeatherMessage(context);
+                if (locationResult == SyncRetryPolicy.RESULT_SUCCESS) {
+                    syncedLocations.add(location);
+                    if (weatherValues.size() > valueCount) {
+                        writtenLocations.add(location);
+                    }
+                } else {
+                    failedLocations.add(location);
+                }
+                if (WeatherContract.WeatherEntry.PREFERRED_LOCATION.equals(location)) {
+                    result = locationResult;
+                    preferredDayCount = weatherValues.size() - valueCount;
+                } else if (locationResult != SyncRetryPolicy.RESULT_SUCCESS) {
+                    Log.w(TAG, "Sync of " + location + " failed with result " + locationResult);
+                }
+            }
+
+            /*
+             * Insert our new weather data into Sunshine's ContentProvider. The replace URI tells
+             * it to delete the old weather of each location in the same transaction, so we
+             * don't keep multiple days' data, and nothing ever sees the table half written.
+             * The weather of removed locations is deleted in that transaction as well. We have no
+             * reason to write anything if there is nothing to insert or delete.
+             */
+            if (!weatherValues.isEmpty() || !removedLocations.isEmpty()) {
+                context.getContentResolver().bulkInsert(
+                        WeatherContract.WeatherEntry.buildReplaceUri(removedLocations),
+                        weatherValues.toArray(new ContentValues[weatherValues.size()]));
+                for (String location : removedLocations) {
+                    freshnessPolicy.invalidate(location);
+                }
+            }
+
+            /*
+             * Writing the forecasts cleared their old validators. Store the validators of the
+             * responses they came from, so the next sync can ask whether anything changed.
+             */
+            for (String location : writtenLocations) {
+                NetworkUtils.HttpResponse response = jsonWeatherResponses.get(location).response;
+                if (response.eTag != null || response.lastModified != null) {
+                    SyncMetadata.updateValidators(context, location, response.eTag,
+                            response.lastModified);
+                }
+            }
+
+            /*
+             * Now that they're in the database, or the server told us the ones we have are
+             * current, these locations' forecasts are fresh.
+             */
+            long syncedMillis = System.currentTimeMillis();
+            for (String location : syncedLocations) {
+                freshnessPolicy.onSyncSucceeded(location, syncedMillis);
+            }
+
+            /*
+             * The others keep the forecast they had, but screens waiting on this sync should
+             * stop saying the forecast is being updated.
+             */
+            for (String location : failedLocations) {
+                freshnessPolicy.onSyncFailed(location);
+            }
+
+            /* Everything below is about the preferred location's new forecast, if we got one */
+            if (preferredDayCount > 0) {
+                /*
+                 * Load the new forecast once. Every screen subscribed to ForecastRepository is
+                 * updated from this load, and the wearable and the notification below are built
+                 * from it as well, so none of them need to query the ContentProvider again.
+                 */
+                Forecast forecast = ForecastRepository.getInstance(context).awaitForecast();
+
+                WearForecastPublisher.getInstance(context).publish(forecast);
 
                 /*
                  * Finally, after we insert data into the ContentProvider, determine whether or not
@@ -104,16 +224,71 @@ public class SunshineSyncTask {
                  * haven't shown a notification in the past day.
                  */
                 if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
+                    NotificationUtils.notifyUserOfNewWeather(context, forecast);
                 }
 
-            /* If the code reaches this point, we have successfully performed our sync */
+            }
+
+            /* If the code reaches this point, we have performed our sync */
+            return result;
+
+        } catch (InterruptedException e) {
+            /* The sync was stopped. Nothing is wrong with the server, so it's worth trying again */
+            Thread.currentThread().interrupt();
+            FreshnessPolicy.getInstance(context)
+                    .onSyncFailed(WeatherContract.WeatherEntry.PREFERRED_LOCATION);
+            return SyncRetryPolicy.RESULT_NETWORK_ERROR;
+
+        } catch (Exception e) {
+            /* Work out what went wrong, so SyncRetryPolicy can decide whether to try again */
+            Log.w(TAG, "Sync failed", e);
+            FreshnessPolicy.getInstance(context)
+                    .onSyncFailed(WeatherContract.WeatherEntry.PREFERRED_LOCATION);
+            return SyncRetryPolicy.classify(e);
+        }
+    }
+
+    /**
+     * Parses one location's response and adds its weather values to the list.
+     *
+     * @param context       Used to save the preferred location's coordinates
+     * @param location      The location the response is for
+     * @param response      What fetching the location returned
+     * @param weatherValues The list to add the location's weather values to
+     * @return How the sync of this location ended, as one of SyncRetryPolicy's RESULT_ codes
+     */
+    private static int parseForecast(Context context, String location,
+                                     ParallelForecastFetcher.Result response,
+                                     List<ContentValues> weatherValues) {
+        if (response.error != null) {
+            return SyncRetryPolicy.classify(response.error);
+        }
+
+        /* The forecast we have is still current, so there is nothing to write */
+        if (response.response.notModified) {
+            return SyncRetryPolicy.RESULT_SUCCESS;
+        }
+
+        String json = response.response.body;
+        try {
+            ContentValues[] locationValues = OpenWeatherJsonUtils
+                    .getWeatherContentValuesFromJson(context, json, location);
 
+            /*
+             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
+             * would have returned null. The code tells us whether the location was invalid or the
+             * server is having problems, which decides whether it's worth trying again.
+             */
+            if (locationValues == null) {
+                return SyncRetryPolicy.classifyStatusCode(
+                        OpenWeatherForecast.getMessageCode(json));
             }
 
+            Collections.addAll(weatherValues, locationValues);
+            return SyncRetryPolicy.RESULT_SUCCESS;
+
         } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+            return SyncRetryPolicy.classify(e);
         }
     }
-}
\ No newline at end of file
+}
@@ -17,19 +17,15 @@ package com.example.android.sunshine.sync;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.util.Log;
 
 import com.example.android.sunshine.MainActivity;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncMetadata;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
@@ -37,20 +33,9 @@ import com.firebase.jobdispatcher.GooglePlayDriver;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.Result;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
-import com.google.android.gms.wearable.Wearable;
-
-import java.util.Collection;
-import java.util.HashSet;
+
 import java.util.concurrent.TimeUnit;
 
-import static com.google.android.gms.wearable.DataMap.TAG;
 
 public class SunshineSyncUtils {
 
@@ -59,17 +44,26 @@ public class SunshineSyncUtils {
      * writing out a bunch of multiplication ourselves and risk making a silly mistake.
      */
     private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = 10;//(int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    static final int SYNC_INTERVAL_SECONDS = 10;//(int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
+    static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
 
     private static boolean sInitialized;
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
+    private static final String SUNSHINE_SYNC_RETRY_TAG = "sunshine-sync-retry";
+
+    /* How much later than asked FirebaseJobDispatcher may run a retry */
+    private static final int RETRY_FLEXTIME_SECONDS = 30;
 
-    public static GoogleApiClient sGoogleApiClient;
-    public static boolean sWearConnected;
+    /*
+     * A sync started in the last minute is still running, or has only just finished. Opening the
+     * app again in that time shouldn't start another one.
+     */
+    private static final long MIN_REVALIDATION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
 
-    private static final String WEATHER_PATH = "/weather";
+    /* When the last immediate sync was started, in SystemClock.elapsedRealtime() time */
+    private static long sLastImmediateSyncMillis;
+    private static boolean sImmediateSyncStarted;
 
     /**
      * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
@@ -124,6 +118,50 @@ public class SunshineSyncUtils {
         /* Schedule the Job with the dispatcher */
         dispatcher.schedule(syncSunshineJob);
     }
+
+    /**
+     * Tells {@link SyncRetryPolicy} how a sync ended, and hands its decision to
+     * FirebaseJobDispatcher: either a one-off retry Job after the backoff, or cancelling any
+     * retry that was waiting, because the sync succeeded or isn't worth retrying.
+     * <p>
+     * The retry is a Job of its own, rather than the Job that failed asking to be rescheduled,
+     * because FirebaseJobDispatcher's RetryStrategy backs off on a fixed schedule. Every phone
+     * that failed at the same time would retry at the same time, which is exactly what jitter
+     * is there to prevent.
+     *
+     * @param context Context used to create the GooglePlayDriver that powers the
+     *                FirebaseJobDispatcher
+     * @param result  How the sync ended, as one of SyncRetryPolicy's RESULT_ codes
+     */
+    static void onSyncFinished(@NonNull Context context, int result) {
+        long retryDelayMillis = SyncRetryPolicy.getInstance(context)
+                .onSyncResult(result, System.currentTimeMillis());
+
+        FirebaseJobDispatcher dispatcher =
+                new FirebaseJobDispatcher(new GooglePlayDriver(context));
+
+        if (retryDelayMillis == SyncRetryPolicy.NO_RETRY) {
+            dispatcher.cancel(SUNSHINE_SYNC_RETRY_TAG);
+            return;
+        }
+
+        int retryDelaySeconds = (int) TimeUnit.MILLISECONDS.toSeconds(retryDelayMillis);
+        Job retrySunshineJob = dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(SUNSHINE_SYNC_RETRY_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                /* After a reboot, the periodic sync takes over */
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(
+                        retryDelaySeconds,
+                        retryDelaySeconds + RETRY_FLEXTIME_SECONDS))
+                /* Each failure replaces the previous retry with one further out */
+                .setReplaceCurrent(true)
+                .build();
+
+        dispatcher.schedule(retrySunshineJob);
+    }
     /**
      * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
      * immediate sync is required, this method will take care of making sure that sync occurs.
@@ -133,35 +171,6 @@ public class SunshineSyncUtils {
      */
     synchronized public static void initialize(@NonNull final Context context) {
 
-        sGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
-                    @Override
-                    public void onConnected(@Nullable Bundle bundle) {
-                        //Log.d("TEST", "onConnecteed");
-                        sWearConnected = true;
-
-                        sendWeatherMessage(context);
-                    }
-
-                    @Override
-                    public void onConnectionSuspended(int i) {
-                        sWearConnected = false;
-                    }
-                })
-                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
-                    @Override
-                    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-                        //Log.d("TEST","onConnectionFailed:"+connectionResult.getErrorCode()+","+connectionResult.getErrorMessage());
-
-                        sWearConnected = false;
-                    }
-                })
-                .build();
-
-        sGoogleApiClient.connect();
-
-
         /*
          * Only perform initialization once per app lifetime. If initialization has already been
          * performed, we have nothing to do in this method.
@@ -182,141 +191,71 @@ public class SunshineSyncUtils {
          * cause our UI to lag. Therefore, we create a thread in which we will run the query
          * to check the contents of our ContentProvider.
          */
-        Thread checkForEmpty = new Thread(new Runnable() {
+        Thread checkForData = new Thread(new Runnable() {
             @Override
             public void run() {
 
-                /* URI for every row of weather data in our weather table*/
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-
                 /*
-                 * Since this query is going to be used only as a check to see if we have any
-                 * data (rather than to display data), we just need to PROJECT the ID of each
-                 * row. In our queries where we display data, we need to PROJECT more columns
-                 * to determine what weather details need to be displayed.
+                 * Rather than query the forecast itself, we read the preferred location's row
+                 * of sync metadata. WeatherProvider keeps it up to date as it writes the weather,
+                 * so this one row tells us whether we have anything from today onwards.
                  */
-                String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
-
-                /* Here, we perform the query to check to see if we have any weather data */
-                Cursor cursor = context.getContentResolver().query(
-                        forecastQueryUri,
-                        projectionColumns,
-                        selectionStatement,
-                        null,
-                        null);
+                SyncMetadata metadata = SyncMetadata.query(context,
+                        WeatherContract.WeatherEntry.PREFERRED_LOCATION);
+                long normalizedUtcNow =
+                        SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
                 /*
-                 * A Cursor object can be null for various different reasons. A few are
-                 * listed below.
-                 *
-                 *   1) Invalid URI
-                 *   2) A certain ContentProvider's query method returns null
-                 *   3) A RemoteException was thrown.
-                 *
-                 * Bottom line, it is generally a good idea to check if a Cursor returned
-                 * from a ContentResolver is null.
-                 *
-                 * If the Cursor was null OR if it was empty, we need to sync immediately to
-                 * be able to display data to the user.
+                 * If we don't have today's forecast, we need to sync immediately to be able to
+                 * display data to the user.
                  */
-                if (null == cursor || cursor.getCount() == 0) {
-                    startImmediateSync(context);
+                if (!metadata.hasDataFrom(normalizedUtcNow)) {
+                    startImmediateSyncIfNotRecent(context);
                 }
-
-                /* Make sure to close the Cursor to avoid memory leaks! */
-                cursor.close();
             }
         });
 
         /* Finally, once the thread is prepared, fire it off to perform our checks. */
-        checkForEmpty.start();
+        checkForData.start();
     }
 
-    public static void sendWeatherMessage(final Context context) {
-
-        new AsyncTask<Void, Void, HashSet<String>>() {
-
-            @Override
-            protected HashSet<String> doInBackground(Void... params) {
-                // get nodes
-                NodeApi.GetConnectedNodesResult nodes =
-                        Wearable.NodeApi.getConnectedNodes(sGoogleApiClient).await();
-
-                HashSet<String> nodeIds = new HashSet<>();
-                for (Node node : nodes.getNodes()) {
-                    nodeIds.add(node.getId());
-                }
-
-                return nodeIds;
-            }
-
-            @Override
-            protected void onPostExecute(HashSet<String> nodeIds) {
-                String[] projection = {
-                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-                        WeatherContract.WeatherEntry.COLUMN_DATE
-                };
-
-
-                long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
-
-                int dateIndex = 3;
-                Cursor cursor = context.getContentResolver().query(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                                /* Columns; leaving this null returns every column in the table */
-                        projection,
-                                /* Optional specification for columns in the "where" clause above */
-                        projection[dateIndex] + " = ?",
-                                /* Values for "where" clause */
-                        new String[] {String.valueOf(normalizedUtcStartDay)},
-                                /* Sort order to return in Cursor */
-                        null);
-
-                if (cursor.moveToFirst()) {
-                    //Log.d("TEST", "cursor is good");
-                    // create comma separated values
-                    // weatherId, temperature max, temperature low
-                    int weatherIdIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
-                    int tempMaxIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
-                    int tempMinIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
-
-                    String weatherIdString = String.valueOf(cursor.getInt(weatherIdIndex));
-
-                    /* Read high temperature from the cursor (in degrees celsius) */
-                    double highInCelsius = cursor.getDouble(tempMaxIndex);
-                    String highString = SunshineWeatherUtils.formatTemperature(context, highInCelsius);
-
-                    double lowInCelsius = cursor.getDouble(tempMinIndex);
-                    String lowString = SunshineWeatherUtils.formatTemperature(context, lowInCelsius);
-
-                    String messageString = weatherIdString + "," + highString + "," + lowString;
-                    byte[] message = messageString.getBytes();
-
-                    for (String node: nodeIds) {
-                        Wearable.MessageApi.sendMessage(sGoogleApiClient, node, WEATHER_PATH, message)
-                            .setResultCallback(new ResultCallback() {
-
-                                @Override
-                                public void onResult(@NonNull Result result) {
-                                    if (!result.getStatus().isSuccess()) {
-                                        //Log.d("TEST", "Failed to send message");
-                                    } else {
-                                        //Log.d("TEST", "Successfully sent message");
-                                    }
-                                }
-                            });
-                    }
-                } else {
-                    //Log.d("TEST", "cursor is null");
-                }
+    /**
+     * Returns true if any location's forecast, the preferred location's or a saved one's, is past
+     * its soft TTL, so that a sync would bring something new.
+     *
+     * @param context Used to read the locations and FreshnessPolicy
+     */
+    static boolean needsRevalidation(@NonNull Context context) {
+        FreshnessPolicy freshnessPolicy = FreshnessPolicy.getInstance(context);
+        long now = System.currentTimeMillis();
+
+        if (freshnessPolicy.getFreshness(WeatherContract.WeatherEntry.PREFERRED_LOCATION, now)
+                != FreshnessPolicy.FRESH) {
+            return true;
+        }
+        for (String location : SunshinePreferences.getSavedLocations(context)) {
+            if (freshnessPolicy.getFreshness(location, now) != FreshnessPolicy.FRESH) {
+                return true;
             }
-        }.execute();
-
+        }
+        return false;
+    }
 
+    /**
+     * Starts a background sync if the forecast is past its soft TTL. Whatever is in the database
+     * can be shown right away, without waiting for this; when the sync finishes, the screens
+     * showing the forecast are updated through ForecastRepository.
+     * <p>
+     * Nothing is fetched if the forecast is still fresh, if a sync was started less than a minute
+     * ago, or while SyncRetryPolicy has the circuit open because the server is failing.
+     *
+     * @param context Context used to start the sync
+     */
+    public static void revalidateIfStale(@NonNull Context context) {
+        if (!needsRevalidation(context)) return;
+        if (SyncRetryPolicy.getInstance(context).isCircuitOpen(System.currentTimeMillis())) return;
 
+        startImmediateSyncIfNotRecent(context);
     }
 
     /**
@@ -326,7 +265,22 @@ public class SunshineSyncUtils {
      * @param context The Context used to start the IntentService for the sync.
      */
     public static void startImmediateSync(@NonNull final Context context) {
+        synchronized (SunshineSyncUtils.class) {
+            sLastImmediateSyncMillis = SystemClock.elapsedRealtime();
+            sImmediateSyncStarted = true;
+        }
         Intent intentToSyncImmediately = new Intent(context, SunshineSyncIntentService.class);
         context.startService(intentToSyncImmediately);
     }
+
+    /* Starts an immediate sync, unless one was started less than a minute ago */
+    private static void startImmediateSyncIfNotRecent(@NonNull Context context) {
+        synchronized (SunshineSyncUtils.class) {
+            if (sImmediateSyncStarted && SystemClock.elapsedRealtime() - sLastImmediateSyncMillis
+                    < MIN_REVALIDATION_INTERVAL_MILLIS) {
+                return;
+            }
+        }
+        startImmediateSync(context);
+    }
 }
\ No newline at end of file
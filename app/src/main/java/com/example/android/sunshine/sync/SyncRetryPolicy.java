@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.NetworkUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SyncRetryPolicy} decides what happens after a sync fails.
+ * <p>
+ * Every sync ends in one of the RESULT_ codes below. Failures that may go away on their own (a
+ * timeout, a 5xx from the server, a dropped connection) are retried with exponential backoff:
+ * each retry waits about twice as long as the one before, up to {@link #MAX_BACKOFF_MILLIS}, and
+ * after {@link #MAX_RETRIES} we stop and wait for the next periodic sync. Failures that won't go
+ * away by asking again (a location the server doesn't know, a response we can't parse) aren't
+ * retried at all.
+ * <p>
+ * Backoff delays are jittered: a retry waits somewhere between half and all of its backoff. If
+ * the server goes down for everyone at once, every phone fails at about the same moment, and
+ * without jitter they would all come back at the same moment too.
+ * <p>
+ * If the server keeps failing, retrying only costs battery and radio time. After
+ * {@link #CIRCUIT_FAILURE_THRESHOLD} server failures in a row the circuit opens, and syncs don't
+ * go to the network at all for {@link #CIRCUIT_OPEN_MILLIS}. After that, the next sync is let
+ * through as a trial: if it succeeds the circuit closes, and if it fails it opens again.
+ * <p>
+ * The state is kept in SharedPreferences, because the process is usually long gone by the time
+ * the next sync runs.
+ */
+class SyncRetryPolicy {
+
+    private static final String TAG = SyncRetryPolicy.class.getSimpleName();
+
+    /* The sync succeeded */
+    static final int RESULT_SUCCESS = 0;
+    /* The server took too long to connect or to answer */
+    static final int RESULT_TIMEOUT = 1;
+    /* The connection failed some other way, most likely because the network went away */
+    static final int RESULT_NETWORK_ERROR = 2;
+    /* The server answered with a 5xx, or an error code we don't know */
+    static final int RESULT_SERVER_ERROR = 3;
+    /* The server doesn't know the location. Only the user can fix this, by changing it */
+    static final int RESULT_LOCATION_NOT_FOUND = 4;
+    /* The response, or something we did with it, was broken. Asking again won't fix that */
+    static final int RESULT_PARSE_ERROR = 5;
+
+    /* Returned by onSyncResult when the sync shouldn't be retried */
+    static final long NO_RETRY = -1;
+
+    static final long BASE_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int MAX_RETRIES = 6;
+
+    static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    static final long CIRCUIT_OPEN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String PREF_RETRY_COUNT = "sync_retry_count";
+    private static final String PREF_SERVER_FAILURES = "sync_retry_server_failures";
+    private static final String PREF_CIRCUIT_OPEN_UNTIL = "sync_retry_circuit_open_until";
+
+    private static SyncRetryPolicy sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final Random mRandom;
+
+    SyncRetryPolicy(SharedPreferences preferences, Random random) {
+        mPreferences = preferences;
+        mRandom = random;
+    }
+
+    static synchronized SyncRetryPolicy getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncRetryPolicy(
+                    PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()),
+                    new Random());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Works out which RESULT_ code a sync that threw this exception ended with.
+     */
+    static int classify(Exception e) {
+        if (e instanceof SocketTimeoutException) {
+            return RESULT_TIMEOUT;
+        }
+        if (e instanceof NetworkUtils.HttpStatusException) {
+            return classifyStatusCode(((NetworkUtils.HttpStatusException) e).getStatusCode());
+        }
+        if (e instanceof IOException) {
+            return RESULT_NETWORK_ERROR;
+        }
+
+        /*
+         * A JSONException means the response wasn't what we expected. Anything else is a bug in
+         * how we handle the response. Either way, a retry won't fix it.
+         */
+        return RESULT_PARSE_ERROR;
+    }
+
+    /**
+     * Works out which RESULT_ code a sync ended with from the HTTP status code, or the error
+     * code in the body of the response.
+     */
+    static int classifyStatusCode(int statusCode) {
+        if (statusCode == HttpURLConnection.HTTP_OK) {
+            return RESULT_SUCCESS;
+        }
+        if (statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+            return RESULT_LOCATION_NOT_FOUND;
+        }
+        return RESULT_SERVER_ERROR;
+    }
+
+    /**
+     * Returns true if syncs shouldn't go to the network because the server has been failing.
+     *
+     * @param nowMillis The current System.currentTimeMillis()
+     */
+    synchronized boolean isCircuitOpen(long nowMillis) {
+        long openUntil = mPreferences.getLong(PREF_CIRCUIT_OPEN_UNTIL, 0);
+
+        /*
+         * The circuit can never be open for longer than CIRCUIT_OPEN_MILLIS. If it looks like it
+         * is, the clock was set back, and we'd rather sync than wait for the clock to catch up.
+         */
+        return nowMillis < openUntil && openUntil - nowMillis <= CIRCUIT_OPEN_MILLIS;
+    }
+
+    /**
+     * Records how a sync ended and decides whether to retry it.
+     *
+     * @param result    One of the RESULT_ codes
+     * @param nowMillis The current System.currentTimeMillis()
+     * @return How long to wait before retrying, or {@link #NO_RETRY}
+     */
+    synchronized long onSyncResult(int result, long nowMillis) {
+        int retryCount = mPreferences.getInt(PREF_RETRY_COUNT, 0);
+        int serverFailures = mPreferences.getInt(PREF_SERVER_FAILURES, 0);
+        SharedPreferences.Editor editor = mPreferences.edit();
+
+        switch (result) {
+            case RESULT_SUCCESS:
+                editor.remove(PREF_RETRY_COUNT)
+                        .remove(PREF_SERVER_FAILURES)
+                        .remove(PREF_CIRCUIT_OPEN_UNTIL)
+                        .apply();
+                return NO_RETRY;
+
+            case RESULT_LOCATION_NOT_FOUND:
+            case RESULT_PARSE_ERROR:
+                /* Not the server's fault, and not something waiting will fix */
+                editor.remove(PREF_RETRY_COUNT).apply();
+                Log.d(TAG, "Sync failed with result " + result + ", not retrying");
+                return NO_RETRY;
+
+            case RESULT_TIMEOUT:
+            case RESULT_SERVER_ERROR:
+                serverFailures++;
+                editor.putInt(PREF_SERVER_FAILURES, serverFailures);
+                if (serverFailures >= CIRCUIT_FAILURE_THRESHOLD) {
+                    editor.putLong(PREF_CIRCUIT_OPEN_UNTIL, nowMillis + CIRCUIT_OPEN_MILLIS)
+                            .remove(PREF_RETRY_COUNT)
+                            .apply();
+                    Log.d(TAG, serverFailures + " server failures in a row, opening the circuit");
+                    return NO_RETRY;
+                }
+                break;
+
+            default:
+                /* A network error says nothing about the server, so the circuit ignores it */
+                break;
+        }
+
+        if (retryCount >= MAX_RETRIES) {
+            editor.remove(PREF_RETRY_COUNT).apply();
+            Log.d(TAG, "Sync failed after " + retryCount + " retries, waiting for the next sync");
+            return NO_RETRY;
+        }
+
+        retryCount++;
+        editor.putInt(PREF_RETRY_COUNT, retryCount).apply();
+        long retryDelayMillis = getBackoffMillis(retryCount);
+        Log.d(TAG, "Sync failed with result " + result + ", retry " + retryCount
+                + " in " + retryDelayMillis + " ms");
+        return retryDelayMillis;
+    }
+
+    /**
+     * The backoff for a retry: BASE_BACKOFF_MILLIS doubled for every retry before it, capped at
+     * MAX_BACKOFF_MILLIS, and then jittered to somewhere between half and all of that.
+     *
+     * @param retryCount Which retry this is, starting at 1
+     */
+    long getBackoffMillis(int retryCount) {
+        /* Large shifts would overflow; the cap is reached long before then anyway */
+        int doublings = Math.min(retryCount - 1, 30);
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << doublings);
+
+        long half = backoff / 2;
+        return half + (long) (mRandom.nextDouble() * (backoff - half));
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * A {@link WearableListenerService} that Play Services starts whenever the set of nodes running
+ * the Sunshine watch face changes. Its intent filter in the manifest only matches the watch
+ * face's capability.
+ * <p>
+ * Unlike a listener registered on a GoogleApiClient, this one keeps hearing about changes while
+ * we're disconnected, so {@link WearForecastPublisher} can keep its set of watches current
+ * without connecting or looking the watches up again.
+ */
+public class WatchCapabilityListenerService extends WearableListenerService {
+
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        WearForecastPublisher.getInstance(this).onCapabilityChanged(capabilityInfo);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WearConnectionManager} owns Sunshine's one connection to the Wearable API.
+ * <p>
+ * Nothing connects at startup. The connection is made the first time someone has something to
+ * send, by calling {@link #acquire()} from a background thread, and it's dropped once nobody has
+ * used it for {@link #IDLE_TIMEOUT_MILLIS}. Every caller pairs acquire with {@link #release()}.
+ * <p>
+ * All of the state is guarded by this object's lock, so acquire and release can be called from
+ * any thread. The lock is never held while connecting: the idle disconnect runs on the main
+ * thread and takes the lock, so a connect that held it could freeze the UI for the whole
+ * connect timeout. Instead, one caller connects while the others wait for it to finish.
+ */
+public final class WearConnectionManager {
+
+    private static final String TAG = WearConnectionManager.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static WearConnectionManager sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+
+    /* Only used to time the idle disconnect; no work is done on the main thread */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /* Guarded by this. A caller waiting for or making the connection counts as a user. */
+    private int mUsers;
+    private boolean mConnecting;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WearConnectionManager.this) {
+                if (mUsers == 0 && !mConnecting && mGoogleApiClient.isConnected()) {
+                    mGoogleApiClient.disconnect();
+                }
+            }
+        }
+    };
+
+    private WearConnectionManager(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Returns the process-wide WearConnectionManager, creating it if necessary. This doesn't
+     * connect anything.
+     *
+     * @param context Any context; only the application context is kept
+     * @return The WearConnectionManager
+     */
+    public static synchronized WearConnectionManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearConnectionManager(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns a connected client, connecting first if necessary. The client stays connected at
+     * least until the matching call to {@link #release()}.
+     *
+     * @return The connected client, or null if it couldn't connect. Don't call release if this
+     * returns null.
+     */
+    @WorkerThread
+    @Nullable
+    public GoogleApiClient acquire() {
+        synchronized (this) {
+            mHandler.removeCallbacks(mIdleDisconnect);
+            mUsers++;
+
+            /* Someone else is already connecting; wait for them rather than connect twice */
+            while (mConnecting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    releaseLocked();
+                    return null;
+                }
+            }
+
+            if (mGoogleApiClient.isConnected()) {
+                return mGoogleApiClient;
+            }
+            mConnecting = true;
+        }
+
+        ConnectionResult connectionResult =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        synchronized (this) {
+            mConnecting = false;
+            notifyAll();
+
+            if (!connectionResult.isSuccess()) {
+                Log.w(TAG, "Failed to connect to Play Services: " + connectionResult);
+                releaseLocked();
+                return null;
+            }
+            return mGoogleApiClient;
+        }
+    }
+
+    /**
+     * Lets go of a client returned by {@link #acquire()}. Once nobody is using the connection,
+     * it's disconnected after {@link #IDLE_TIMEOUT_MILLIS}.
+     */
+    public synchronized void release() {
+        if (mUsers == 0) {
+            throw new IllegalStateException("release() called without a matching acquire()");
+        }
+        releaseLocked();
+    }
+
+    /* Must be called holding the lock */
+    private void releaseLocked() {
+        mUsers--;
+        if (mUsers == 0) {
+            mHandler.postDelayed(mIdleDisconnect, IDLE_TIMEOUT_MILLIS);
+        }
+    }
+
+    public boolean isConnected() {
+        return mGoogleApiClient.isConnected();
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.genenakagaki.shared.ForecastCodec;
+import com.genenakagaki.shared.WearContract;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WearForecastPublisher} publishes the forecast to the Sunshine watch face through the
+ * wearable data layer.
+ * <p>
+ * All of the work, from reading the forecast to talking to Play Services, happens on a single
+ * background thread, so publishing never costs the UI a frame. Callers just hand over the
+ * forecast and return.
+ * <p>
+ * The connection to Play Services comes from {@link WearConnectionManager}, which only connects
+ * while there is something to publish. The first publish after the process starts looks up which
+ * watches running the Sunshine watch face are reachable, through the watch face's capability.
+ * From then on {@link WatchCapabilityListenerService} tells us whenever that set changes, whether
+ * or not we're connected at the time, so the watches aren't looked up again for every publish.
+ * When no watch is reachable the forecast is still put into the data layer, which delivers it
+ * once a watch connects.
+ * <p>
+ * A {@link WearPublishPolicy} drops forecasts the watches already have and spaces publishes at
+ * least {@link #MIN_PUBLISH_INTERVAL_MILLIS} apart, so frequent syncs don't keep waking up the
+ * watch's radio. Only the latest forecast is ever pending.
+ */
+public final class WearForecastPublisher {
+
+    private static final String TAG = WearForecastPublisher.class.getSimpleName();
+
+    private static final long MIN_PUBLISH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static WearForecastPublisher sInstance;
+
+    private final Context mContext;
+
+    /* Every publish runs on this thread, one at a time */
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private final WearConnectionManager mConnectionManager;
+
+    /*
+     * Updated by WatchCapabilityListenerService and read on the executor thread. Guarded by
+     * mWatchNodeIds, as is whether it has been filled in yet.
+     */
+    private final Set<String> mWatchNodeIds = new HashSet<>();
+    private boolean mWatchNodesKnown;
+
+    /* Only touched on the executor thread */
+    private final WearPublishPolicy mPolicy = new WearPublishPolicy(MIN_PUBLISH_INTERVAL_MILLIS);
+    private Forecast mPendingForecast;
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            flush();
+        }
+    };
+
+    private WearForecastPublisher(Context context) {
+        mContext = context.getApplicationContext();
+        mConnectionManager = WearConnectionManager.getInstance(mContext);
+    }
+
+    /**
+     * Returns the process-wide WearForecastPublisher, creating it if necessary.
+     *
+     * @param context Any context; only the application context is kept
+     * @return The WearForecastPublisher
+     */
+    public static synchronized WearForecastPublisher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearForecastPublisher(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Publishes a forecast to the watch in the background.
+     *
+     * @param forecast The forecast to publish, or null to publish whatever ForecastRepository
+     *                 currently holds (loading it first if necessary)
+     */
+    public void publish(@Nullable final Forecast forecast) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Forecast currentForecast = forecast;
+                if (currentForecast == null) {
+                    currentForecast = ForecastRepository.getInstance(mContext).awaitForecast();
+                }
+
+                /* Anything still pending is older than this, so it can be dropped */
+                mPendingForecast = currentForecast;
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Called by WatchCapabilityListenerService whenever the set of nodes running the Sunshine
+     * watch face changes. If a watch has just become reachable and a forecast is pending, we try
+     * to publish it now.
+     *
+     * @param capabilityInfo The nodes that currently have the watch face capability
+     */
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        updateWatchNodes(capabilityInfo.getNodes());
+
+        if (capabilityInfo.getNodes().isEmpty()) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    /*
+     * Publishes the pending forecast if there is one and the policy allows it. If it's too soon
+     * after the last publish, a flush is scheduled for when the minimum interval is up; whatever
+     * is pending by then is what gets published.
+     */
+    @WorkerThread
+    private void flush() {
+        if (mPendingForecast == null || mFlushScheduled) return;
+
+        /* If there is no weather at all, leave whatever the watch has alone */
+        if (mPendingForecast.isEmpty()) {
+            mPendingForecast = null;
+            return;
+        }
+
+        long delayMillis = mPolicy.getDelayMillis(SystemClock.elapsedRealtime());
+        if (delayMillis > 0) {
+            mFlushScheduled = true;
+            mExecutor.schedule(mFlushTask, delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        GoogleApiClient googleApiClient = mConnectionManager.acquire();
+        if (googleApiClient == null) return;
+
+        try {
+            lookUpWatchNodes(googleApiClient);
+
+            Set<String> nodeIds = getWatchNodeIds();
+            byte[] payload = encodeForecast(mPendingForecast);
+            long payloadHash = WearPublishPolicy.hash(payload);
+            mPendingForecast = null;
+
+            if (mPolicy.isDelivered(nodeIds, payloadHash)) return;
+
+            putForecast(googleApiClient, payload);
+            mPolicy.onPublished(nodeIds, payloadHash, SystemClock.elapsedRealtime());
+        } finally {
+            mConnectionManager.release();
+        }
+    }
+
+    /*
+     * Seeds the node set with the watches reachable right now, the first time we publish.
+     * WatchCapabilityListenerService keeps it current after that, across reconnects, so the
+     * watches are only looked up once per process.
+     */
+    @WorkerThread
+    private void lookUpWatchNodes(GoogleApiClient googleApiClient) {
+        synchronized (mWatchNodeIds) {
+            if (mWatchNodesKnown) return;
+        }
+
+        CapabilityApi.GetCapabilityResult capabilityResult = Wearable.CapabilityApi
+                .getCapability(googleApiClient,
+                        WearContract.CAPABILITY_WATCH_FACE,
+                        CapabilityApi.FILTER_REACHABLE)
+                .await();
+        if (capabilityResult.getStatus().isSuccess()) {
+            updateWatchNodes(capabilityResult.getCapability().getNodes());
+        }
+    }
+
+    private void updateWatchNodes(Set<Node> nodes) {
+        synchronized (mWatchNodeIds) {
+            mWatchNodeIds.clear();
+            for (Node node : nodes) {
+                mWatchNodeIds.add(node.getId());
+            }
+            mWatchNodesKnown = true;
+        }
+    }
+
+    private Set<String> getWatchNodeIds() {
+        synchronized (mWatchNodeIds) {
+            return new HashSet<>(mWatchNodeIds);
+        }
+    }
+
+    /*
+     * Encodes the whole forecast as one payload. Temperatures go over in celsius, along with a
+     * flag for the units the user prefers. The watch formats them itself, so it never has to
+     * parse our strings.
+     */
+    private byte[] encodeForecast(Forecast forecast) {
+        int flags = SunshinePreferences.isMetric(mContext) ? 0 : ForecastCodec.FLAG_IMPERIAL;
+        byte[] payload = ForecastCodec.newPayload(flags, forecast.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            ForecastCodec.putDay(payload, i,
+                    forecast.getDate(i),
+                    forecast.getWeatherId(i),
+                    forecast.getHigh(i),
+                    forecast.getLow(i));
+        }
+        return payload;
+    }
+
+    /*
+     * Puts the encoded forecast into the data layer, one data item per day. Before putting
+     * anything, we read back the days already in the data layer. Only days whose payload changed
+     * are put, and days that are no longer part of the forecast are deleted, so a sync that
+     * changes one day only sends that day to the watch.
+     */
+    @WorkerThread
+    private void putForecast(GoogleApiClient googleApiClient, @NonNull byte[] forecastPayload) {
+        /* Read back what the watch already has, keyed by path */
+        HashMap<String, byte[]> publishedPayloads = new HashMap<>();
+        Uri weatherUri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(WearContract.PATH_WEATHER)
+                .build();
+        DataItemBuffer dataItems = Wearable.DataApi
+                .getDataItems(googleApiClient, weatherUri, DataApi.FILTER_PREFIX)
+                .await();
+        try {
+            for (DataItem dataItem : dataItems) {
+                publishedPayloads.put(dataItem.getUri().getPath(),
+                        DataMapItem.fromDataItem(dataItem).getDataMap()
+                                .getByteArray(WearContract.KEY_FORECAST));
+            }
+        } finally {
+            dataItems.release();
+        }
+
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        for (int i = 0; i < ForecastCodec.getDayCount(forecastPayload); i++) {
+            long date = ForecastCodec.getDate(forecastPayload, i);
+            byte[] payload = ForecastCodec.copyDay(forecastPayload, i);
+
+            String path = WearContract.buildWeatherPathForDate(date);
+            if (Arrays.equals(publishedPayloads.remove(path), payload)) continue;
+
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(path);
+            putDataMapRequest.getDataMap().putByteArray(WearContract.KEY_FORECAST, payload);
+            PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
+
+            /* The watch face is showing today right now, so don't let it wait for a batch */
+            if (date == normalizedUtcStartDay) {
+                putDataRequest.setUrgent();
+            }
+
+            DataApi.DataItemResult result =
+                    Wearable.DataApi.putDataItem(googleApiClient, putDataRequest).await();
+            if (!result.getStatus().isSuccess()) {
+                Log.w(TAG, "Failed to put " + path + ": " + result.getStatus());
+            }
+        }
+
+        /* Whatever is left over is a day that has dropped out of the forecast */
+        for (String path : publishedPayloads.keySet()) {
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(path)
+                    .build();
+            Wearable.DataApi.deleteDataItems(googleApiClient, uri).await();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * {@link WearPublishPolicy} decides when {@link WearForecastPublisher} actually publishes.
+ * <p>
+ * It remembers a hash of the last payload delivered to each watch, so a payload that every
+ * reachable watch already has is dropped. It also enforces a minimum interval between
+ * publishes. A payload that arrives too soon isn't lost; the publisher holds on to the latest
+ * one and publishes it once the interval is up.
+ * <p>
+ * This class isn't thread safe. WearForecastPublisher only uses it on its executor thread.
+ */
+class WearPublishPolicy {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long mMinIntervalMillis;
+
+    /* Hash of the last payload delivered to each watch, keyed by node ID */
+    private final HashMap<String, Long> mDeliveredHashes = new HashMap<>();
+
+    /*
+     * Hash of the last payload published at all. With no watch reachable, the data layer holds
+     * on to what we published until one connects, so there is no point publishing it again.
+     */
+    private Long mLastPublishedHash;
+
+    /* When the last publish happened, in SystemClock.elapsedRealtime() time */
+    private long mLastPublishMillis = Long.MIN_VALUE;
+
+    /**
+     * @param minIntervalMillis The shortest time allowed between two publishes
+     */
+    WearPublishPolicy(long minIntervalMillis) {
+        mMinIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Returns true if every one of the given watches was already delivered a payload with this
+     * hash, meaning there is nothing to send. If no watch is reachable, returns true if this
+     * payload was the last one published.
+     */
+    boolean isDelivered(Set<String> nodeIds, long payloadHash) {
+        if (nodeIds.isEmpty()) {
+            return mLastPublishedHash != null && mLastPublishedHash == payloadHash;
+        }
+
+        for (String nodeId : nodeIds) {
+            Long deliveredHash = mDeliveredHashes.get(nodeId);
+            if (deliveredHash == null || deliveredHash != payloadHash) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how long to wait before publishing is allowed again, or 0 if it's allowed now.
+     *
+     * @param nowMillis The current SystemClock.elapsedRealtime()
+     */
+    long getDelayMillis(long nowMillis) {
+        if (mLastPublishMillis == Long.MIN_VALUE) return 0;
+        return Math.max(0, mLastPublishMillis + mMinIntervalMillis - nowMillis);
+    }
+
+    /**
+     * Records that a payload was published to the given watches.
+     *
+     * @param nowMillis The current SystemClock.elapsedRealtime()
+     */
+    void onPublished(Set<String> nodeIds, long payloadHash, long nowMillis) {
+        mLastPublishMillis = nowMillis;
+        mLastPublishedHash = payloadHash;
+        for (String nodeId : nodeIds) {
+            mDeliveredHashes.put(nodeId, payloadHash);
+        }
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the payload. Unlike Arrays.hashCode, collisions between two
+     * different forecasts are unlikely enough to ignore.
+     */
+    static long hash(byte[] payload) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : payload) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
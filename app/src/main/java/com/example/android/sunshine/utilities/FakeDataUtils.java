@@ -51,4 +51,23 @@ public class FakeDataUtils {
                 WeatherContract.WeatherEntry.CONTENT_URI,
                 fakeValues.toArray(new ContentValues[7]));
     }
+
+    /**
+     * Inserts years of generated weather for many locations, starting today, through the same
+     * bulkInsert path a sync uses. Use it to load test queries, scrolling and migrations.
+     * See {@link SyntheticWeatherGenerator} for what the data looks like.
+     * @param context         Used to reach WeatherProvider through its ContentResolver
+     * @param seed            Seeds the generator; the same seed always inserts the same rows
+     * @param locationCount   Number of locations to insert weather for. Location 0 is the
+     *                        preferred location, the others are saved locations.
+     * @param daysPerLocation Days of weather to insert for each location, starting today
+     * @return The number of rows inserted
+     */
+    public static long insertSyntheticData(Context context, long seed, int locationCount,
+                                           int daysPerLocation) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        return SyntheticWeatherGenerator.insert(context.getContentResolver(), seed,
+                locationCount, daysPerLocation, today,
+                SyntheticWeatherGenerator.DEFAULT_BATCH_SIZE);
+    }
 }
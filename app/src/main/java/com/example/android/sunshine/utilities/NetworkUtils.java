@@ -37,24 +37,14 @@ public final class NetworkUtils {
 
     /*
      * Sunshine was originally built to use OpenWeatherMap's API. However, we wanted to provide
-     * a way to much more easily test the app and provide more varied weather data. After all, in
-     * Mountain View (Google's HQ), it gets very boring looking at a forecast of perfectly clear
-     * skies at 75°F every day... (UGH!) The solution we came up with was to host our own fake
-     * weather server. With this server, there are two URL's you can use. The first (and default)
-     * URL will return dynamic weather data. Each time the app refreshes, you will get different,
-     * completely random weather data. This is incredibly useful for testing the robustness of your
-     * application, as different weather JSON will provide edge cases for some of your methods.
+     * a way to much more easily test the app, so we host our own fake weather server. Sunshine
+     * uses its .../staticweather URL, which returns the weather data that you will see in the
+     * videos on Udacity.
      *
-     * If you'd prefer to test with the weather data that you will see in the videos on Udacity,
-     * you can do so by setting the FORECAST_BASE_URL to STATIC_WEATHER_URL below.
+     * The base URL comes from the FORECAST_BASE_URL field in app/build.gradle, and it can be
+     * overridden at runtime with SunshinePreferences.setForecastBaseUrl. That lets tests and
+     * benchmarks sync against a local server instead of the real one.
      */
-    private static final String DYNAMIC_WEATHER_URL =
-            "https://andfun-weather.udacity.com/weather";
-
-    private static final String STATIC_WEATHER_URL =
-            "https://andfun-weather.udacity.com/staticweather";
-
-    private static final String FORECAST_BASE_URL = STATIC_WEATHER_URL;
 
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
@@ -83,6 +73,54 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /*
+     * HttpURLConnection waits forever by default. A server that stops answering would hold the
+     * sync (and the radio) up indefinitely, so we give up after these and treat it as a timeout.
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    /**
+     * Thrown when the server answers with something other than 200 OK. The status code tells a
+     * location the server doesn't know (404) apart from a server that is having problems (5xx),
+     * which the sync needs to decide whether trying again makes sense.
+     */
+    public static class HttpStatusException extends IOException {
+
+        private final int mStatusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("Server returned HTTP status " + statusCode);
+            mStatusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+    }
+
+    /**
+     * What the server answered: either a body, along with the validators to make the next
+     * request for it conditional, or that the response we already have is still current.
+     */
+    public static final class HttpResponse {
+
+        /* The body of the response, or null if there was none */
+        public final String body;
+        /* The ETag and Last-Modified headers, or null if the server didn't send them */
+        public final String eTag;
+        public final String lastModified;
+        /* True if the server answered 304 Not Modified. There is no body then. */
+        public final boolean notModified;
+
+        HttpResponse(String body, String eTag, String lastModified, boolean notModified) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.notModified = notModified;
+        }
+    }
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
      * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
@@ -98,17 +136,31 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
+        String forecastBaseUrl = SunshinePreferences.getForecastBaseUrl(context);
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
             double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
             double latitude = preferredCoordinates[0];
             double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
+            return buildUrlWithLatitudeLongitude(forecastBaseUrl, latitude, longitude);
         } else {
             String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+            return buildUrlWithLocationQuery(forecastBaseUrl, locationQuery);
         }
     }
 
+    /**
+     * Retrieves the URL to query for the weather of a saved location. Unlike the preferred
+     * location, saved locations are always looked up by their query String.
+     *
+     * @param context       used to access other Utility methods
+     * @param locationQuery The saved location, as returned by SunshinePreferences
+     * @return URL to query weather service
+     */
+    public static URL getUrlForLocation(Context context, String locationQuery) {
+        String forecastBaseUrl = SunshinePreferences.getForecastBaseUrl(context);
+        return buildUrlWithLocationQuery(forecastBaseUrl, locationQuery);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
@@ -117,8 +169,9 @@ public final class NetworkUtils {
      * @param longitude The longitude of the location
      * @return The Url to use to query the weather server.
      */
-    private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLatitudeLongitude(String forecastBaseUrl,
+                                                     Double latitude, Double longitude) {
+        Uri weatherQueryUri = Uri.parse(forecastBaseUrl).buildUpon()
                 .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
@@ -143,8 +196,8 @@ public final class NetworkUtils {
      * @param locationQuery The location that will be queried for.
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLocationQuery(String forecastBaseUrl, String locationQuery) {
+        Uri weatherQueryUri = Uri.parse(forecastBaseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
@@ -166,11 +219,48 @@ public final class NetworkUtils {
      *
      * @param url The URL to fetch the HTTP response from.
      * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @throws IOException Related to network and stream reading. A connection or read that takes
+     *                     too long throws a SocketTimeoutException, and a response other than
+     *                     200 OK throws an {@link HttpStatusException}.
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
+        return getResponseFromHttpUrl(url, null, null).body;
+    }
+
+    /**
+     * Makes a conditional request: the server is sent the validators of the response we already
+     * have, and if that response is still current it answers 304 Not Modified with no body
+     * instead of sending the whole thing again.
+     *
+     * @param url          The URL to fetch the HTTP response from.
+     * @param eTag         Sent as If-None-Match, or null to leave it out
+     * @param lastModified Sent as If-Modified-Since, or null to leave it out
+     * @return The response, which is {@link HttpResponse#notModified} if the server answered
+     * 304 Not Modified
+     * @throws IOException Related to network and stream reading. A connection or read that takes
+     *                     too long throws a SocketTimeoutException, and a response other than
+     *                     200 OK or 304 Not Modified throws an {@link HttpStatusException}.
+     */
+    public static HttpResponse getResponseFromHttpUrl(URL url, String eTag, String lastModified)
+            throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (eTag != null) {
+            urlConnection.setRequestProperty("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+        }
         try {
+            int statusCode = urlConnection.getResponseCode();
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new HttpResponse(null, eTag, lastModified, true);
+            }
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(statusCode);
+            }
+
             InputStream in = urlConnection.getInputStream();
 
             Scanner scanner = new Scanner(in);
@@ -182,7 +272,10 @@ public final class NetworkUtils {
                 response = scanner.next();
             }
             scanner.close();
-            return response;
+            return new HttpResponse(response,
+                    urlConnection.getHeaderField("ETag"),
+                    urlConnection.getHeaderField("Last-Modified"),
+                    false);
         } finally {
             urlConnection.disconnect();
         }
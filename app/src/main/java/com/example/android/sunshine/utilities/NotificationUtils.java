@@ -5,40 +5,21 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.support.v4.content.ContextCompat;
 
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.Forecast;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
 public class NotificationUtils {
 
-    /*
-     * The columns of data that we are interested in displaying within our notification to let
-     * the user know there is new weather data available.
-     */
-    public static final String[] WEATHER_NOTIFICATION_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_ID = 0;
-    public static final int INDEX_MAX_TEMP = 1;
-    public static final int INDEX_MIN_TEMP = 2;
-
     /*
      * This notification ID can be used to access our notification after we've displayed it. This
      * can be handy when we need to cancel the notification, or perhaps update it. This number is
@@ -49,43 +30,44 @@ public class NotificationUtils {
     /**
      * Constructs and displays a notification for the newly updated weather for today.
      *
-     * @param context Context used to query our ContentProvider and use various Utility methods
+     * @param context  Context used to use various Utility methods
+     * @param forecast The current forecast, as loaded by ForecastRepository. Today's weather is
+     *                 read from it rather than queried again.
      */
-    public static void notifyUserOfNewWeather(Context context) {
+    public static void notifyUserOfNewWeather(Context context, Forecast forecast) {
 
         /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today);
 
         /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
+         * If today isn't part of the forecast, indexOfDate will return -1. If it is, we want to
+         * show the notification.
          */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
-
-        /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
-         */
-        if (todayWeatherCursor.moveToFirst()) {
+        int todayPosition = forecast.indexOfDate(today);
+        if (todayPosition != -1) {
 
             /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
+            int weatherId = forecast.getWeatherId(todayPosition);
+            double high = forecast.getHigh(todayPosition);
+            double low = forecast.getLow(todayPosition);
 
             Resources resources = context.getResources();
             int largeArtResourceId = SunshineWeatherUtils
                     .getLargeArtResourceIdForWeatherCondition(weatherId);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+            /*
+             * The large art is a vector drawable, so we have it rasterized at the size the
+             * notification shows it at. WeatherArtCache keeps the result around, so a sync that
+             * doesn't change today's weather condition doesn't draw the art again.
+             */
+            int largeIconSize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                    : resources.getDimensionPixelSize(R.dimen.list_icon);
+            Bitmap largeIcon = WeatherArtCache.getArt(
+                    context,
+                    largeArtResourceId,
+                    largeIconSize);
 
             String notificationTitle = context.getString(R.string.app_name);
 
@@ -136,9 +118,6 @@ public class NotificationUtils {
              */
             SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
         }
-
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
-        todayWeatherCursor.close();
     }
 
     /**
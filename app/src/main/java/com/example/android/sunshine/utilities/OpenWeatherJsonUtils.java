@@ -20,92 +20,52 @@ import android.content.Context;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.genenakagaki.shared.OpenWeatherForecast;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.net.HttpURLConnection;
 
 /**
  * Utility functions to handle OpenWeatherMap JSON data.
  */
 public final class OpenWeatherJsonUtils {
 
-    /* Location information */
-    private static final String OWM_CITY = "city";
-    private static final String OWM_COORD = "coord";
-
-    /* Location coordinate */
-    private static final String OWM_LATITUDE = "lat";
-    private static final String OWM_LONGITUDE = "lon";
-
-    /* Weather information. Each day's forecast info is an element of the "list" array */
-    private static final String OWM_LIST = "list";
-
-    private static final String OWM_PRESSURE = "pressure";
-    private static final String OWM_HUMIDITY = "humidity";
-    private static final String OWM_WINDSPEED = "speed";
-    private static final String OWM_WIND_DIRECTION = "deg";
-
-    /* All temperatures are children of the "temp" object */
-    private static final String OWM_TEMPERATURE = "temp";
-
-    /* Max temperature for the day */
-    private static final String OWM_MAX = "max";
-    private static final String OWM_MIN = "min";
-
-    private static final String OWM_WEATHER = "weather";
-    private static final String OWM_WEATHER_ID = "id";
-
-    private static final String OWM_MESSAGE_CODE = "cod";
-
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * This method parses JSON from a web response and returns the forecast as ContentValues,
+     * ready to be bulk inserted into the weather table.
+     * <p>
+     * The parsing itself is done by {@link OpenWeatherForecast} in the shared module, which has
+     * no Android dependencies. That keeps it runnable (and measurable) on a plain JVM; all this
+     * method adds is saving the location and building the ContentValues.
      *
+     * @param context         Used to save the location's coordinates
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return ContentValues for each day of the forecast, or null if the server returned an error
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
+        return getWeatherContentValuesFromJson(context, forecastJsonStr,
+                WeatherContract.WeatherEntry.PREFERRED_LOCATION);
+    }
 
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-        /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    /* Location invalid */
-                    return null;
-                default:
-                    /* Server probably down */
-                    return null;
-            }
-        }
-
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
-
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+    /**
+     * Same as {@link #getWeatherContentValuesFromJson(Context, String)}, for the forecast of
+     * any location. Only the preferred location's coordinates are saved; they are what the map
+     * and the next sync use.
+     *
+     * @param context         Used to save the location's coordinates
+     * @param forecastJsonStr JSON response from server
+     * @param location        The value of the location column for every row, either
+     *                        WeatherEntry.PREFERRED_LOCATION or a saved location's query
+     *
+     * @return ContentValues for each day of the forecast, or null if the server returned an error
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ContentValues[] getWeatherContentValuesFromJson(Context context,
+            String forecastJsonStr, String location) throws JSONException {
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -113,72 +73,37 @@ public final class OpenWeatherJsonUtils {
          * Since this data is also sent in-order and the first day is always the current day, we're
          * going to take advantage of that to get a nice normalized UTC date for all of our weather.
          */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = SunshineDateUtils.normalizeDate(now);
-
         long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
+        OpenWeatherForecast forecast =
+                OpenWeatherForecast.parse(forecastJsonStr, normalizedUtcStartDay);
 
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+        /* Is there an error? The location was invalid or the server is probably down */
+        if (forecast == null) {
+            return null;
+        }
 
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+        if (WeatherContract.WeatherEntry.PREFERRED_LOCATION.equals(location)) {
+            SunshinePreferences.setLocationDetails(context, forecast.latitude, forecast.longitude);
+        }
 
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+        ContentValues[] weatherContentValues = new ContentValues[forecast.getDayCount()];
 
+        for (int i = 0; i < forecast.getDayCount(); i++) {
             ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOCATION, location);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, forecast.dates[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, forecast.humidities[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, forecast.pressures[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, forecast.windSpeeds[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, forecast.windDirections[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, forecast.highs[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, forecast.lows[i]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, forecast.weatherIds[i]);
 
             weatherContentValues[i] = weatherValues;
         }
 
         return weatherContentValues;
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,7 @@ import android.content.Context;
 import android.text.format.DateUtils;
 
 import com.example.android.sunshine.R;
+import com.genenakagaki.shared.WeatherDates;
 
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
@@ -26,11 +27,14 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Class for handling date conversions that are useful for Sunshine.
+ * <p>
+ * The methods that don't need a Context delegate to {@link WeatherDates} in the shared module, so
+ * the watch and the JVM benchmarks use exactly the same date arithmetic as the app.
  */
 public final class SunshineDateUtils {
 
     /* Milliseconds in a day */
-    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long DAY_IN_MILLIS = WeatherDates.DAY_IN_MILLIS;
 
     /**
      * This method returns the number of milliseconds (UTC time) for today's date at midnight in
@@ -56,45 +60,13 @@ public final class SunshineDateUtils {
      * time zone
      */
     public static long getNormalizedUtcDateForToday() {
-
         /*
-         * This number represents the number of milliseconds that have elapsed since January
-         * 1st, 1970 at midnight in the GMT time zone.
+         * The arithmetic lives in the shared module's WeatherDates, which has no Android
+         * dependencies. It takes the current UTC time, adds the device's time zone offset (which
+         * accounts for daylight savings time) to get the local time, and then drops everything
+         * past midnight. The result is today's date at midnight in GMT time.
          */
-        long utcNowMillis = System.currentTimeMillis();
-
-        /*
-         * This TimeZone represents the device's current time zone. It provides us with a means
-         * of acquiring the offset for local time from a UTC time stamp.
-         */
-        TimeZone currentTimeZone = TimeZone.getDefault();
-
-        /*
-         * The getOffset method returns the number of milliseconds to add to UTC time to get the
-         * elapsed time since the epoch for our current time zone. We pass the current UTC time
-         * into this method so it can determine changes to account for daylight savings time.
-         */
-        long gmtOffsetMillis = currentTimeZone.getOffset(utcNowMillis);
-
-        /*
-         * UTC time is measured in milliseconds from January 1, 1970 at midnight from the GMT
-         * time zone. Depending on your time zone, the time since January 1, 1970 at midnight (GMT)
-         * will be greater or smaller. This variable represents the number of milliseconds since
-         * January 1, 1970 (GMT) time.
-         */
-        long timeSinceEpochLocalTimeMillis = utcNowMillis + gmtOffsetMillis;
-
-        /* This method simply converts milliseconds to days, disregarding any fractional days */
-        long daysSinceEpochLocal = TimeUnit.MILLISECONDS.toDays(timeSinceEpochLocalTimeMillis);
-
-        /*
-         * Finally, we convert back to milliseconds. This time stamp represents today's date at
-         * midnight in GMT time. We will need to account for local time zone offsets when
-         * extracting this information from the database.
-         */
-        long normalizedUtcMidnightMillis = TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
-
-        return normalizedUtcMidnightMillis;
+        return WeatherDates.getNormalizedUtcDateForToday();
     }
 
     /**
@@ -136,9 +108,7 @@ public final class SunshineDateUtils {
      * @return The UTC date at 12 midnight of the date
      */
     public static long normalizeDate(long date) {
-        long daysSinceEpoch = elapsedDaysSinceEpoch(date);
-        long millisFromEpochToTodayAtMidnightUtc = daysSinceEpoch * DAY_IN_MILLIS;
-        return millisFromEpochToTodayAtMidnightUtc;
+        return WeatherDates.normalizeDate(date);
     }
 
     /**
@@ -151,12 +121,7 @@ public final class SunshineDateUtils {
      * @return true if the date represents the beginning of a day in Unix time, false otherwise
      */
     public static boolean isDateNormalized(long millisSinceEpoch) {
-        boolean isDateNormalized = false;
-        if (millisSinceEpoch % DAY_IN_MILLIS == 0) {
-            isDateNormalized = true;
-        }
-
-        return isDateNormalized;
+        return WeatherDates.isDateNormalized(millisSinceEpoch);
     }
 
     /**
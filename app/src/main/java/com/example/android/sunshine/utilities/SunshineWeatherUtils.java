@@ -20,6 +20,8 @@ import android.util.Log;
 
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.genenakagaki.shared.WeatherConditions;
+import com.genenakagaki.shared.WeatherFormat;
 
 /**
  * Contains useful utilities for a weather app, such as conversion between Celsius and Fahrenheit,
@@ -30,18 +32,6 @@ public final class SunshineWeatherUtils {
 
     private static final String LOG_TAG = SunshineWeatherUtils.class.getSimpleName();
 
-    /**
-     * This method will convert a temperature from Celsius to Fahrenheit.
-     *
-     * @param temperatureInCelsius Temperature in degrees Celsius(°C)
-     *
-     * @return Temperature in degrees Fahrenheit (°F)
-     */
-    private static double celsiusToFahrenheit(double temperatureInCelsius) {
-        double temperatureInFahrenheit = (temperatureInCelsius * 1.8) + 32;
-        return temperatureInFahrenheit;
-    }
-
     /**
      * Temperature data is stored in Celsius by our app. Depending on the user's preference,
      * the app may need to display the temperature in Fahrenheit. This method will perform that
@@ -55,14 +45,12 @@ public final class SunshineWeatherUtils {
      * "21°"
      */
     public static String formatTemperature(Context context, double temperature) {
-        if (!SunshinePreferences.isMetric(context)) {
-            temperature = celsiusToFahrenheit(temperature);
-        }
-
-        int temperatureFormatResourceId = R.string.format_temperature;
-
-        /* For presentation, assume the user doesn't care about tenths of a degree. */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        /*
+         * For presentation, assume the user doesn't care about tenths of a degree. The
+         * conversion and formatting live in the shared module, where they can be benchmarked.
+         */
+        return WeatherFormat.formatTemperature(context.getString(R.string.format_temperature),
+                temperature, SunshinePreferences.isMetric(context));
     }
 
     /**
@@ -98,37 +86,13 @@ public final class SunshineWeatherUtils {
      * @return Wind String in the following form: "2 km/h SW"
      */
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-        int windFormat = R.string.format_wind_kmh;
-
-        if (!SunshinePreferences.isMetric(context)) {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
-
-        /*
-         * You know what's fun? Writing really long if/else statements with tons of possible
-         * conditions. Seriously, try it!
-         */
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        /* Picks the units' format and turns degrees into a compass direction, such as "NW" */
+        return WeatherFormat.formatWind(
+                context.getString(R.string.format_wind_kmh),
+                context.getString(R.string.format_wind_mph),
+                windSpeed,
+                degrees,
+                SunshinePreferences.isMetric(context));
     }
 
     /**
@@ -328,36 +292,26 @@ public final class SunshineWeatherUtils {
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
 
         /*
-         * Based on weather code data for Open Weather Map.
+         * Based on weather code data for Open Weather Map, grouped into the conditions we have
+         * art for by the shared module's WeatherConditions.
          */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
+        switch (WeatherConditions.getCondition(weatherId)) {
+            case WeatherConditions.STORM:
+                return R.drawable.ic_storm;
+            case WeatherConditions.LIGHT_RAIN:
+                return R.drawable.ic_light_rain;
+            case WeatherConditions.RAIN:
+                return R.drawable.ic_rain;
+            case WeatherConditions.SNOW:
+                return R.drawable.ic_snow;
+            case WeatherConditions.FOG:
+                return R.drawable.ic_fog;
+            case WeatherConditions.CLEAR:
+                return R.drawable.ic_clear;
+            case WeatherConditions.LIGHT_CLOUDS:
+                return R.drawable.ic_light_clouds;
+            case WeatherConditions.CLOUDS:
+                return R.drawable.ic_cloudy;
         }
 
         Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
@@ -381,36 +335,26 @@ public final class SunshineWeatherUtils {
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
 
         /*
-         * Based on weather code data for Open Weather Map.
+         * Based on weather code data for Open Weather Map, grouped into the conditions we have
+         * art for by the shared module's WeatherConditions.
          */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
+        switch (WeatherConditions.getCondition(weatherId)) {
+            case WeatherConditions.STORM:
+                return R.drawable.art_storm;
+            case WeatherConditions.LIGHT_RAIN:
+                return R.drawable.art_light_rain;
+            case WeatherConditions.RAIN:
+                return R.drawable.art_rain;
+            case WeatherConditions.SNOW:
+                return R.drawable.art_snow;
+            case WeatherConditions.FOG:
+                return R.drawable.art_fog;
+            case WeatherConditions.CLEAR:
+                return R.drawable.art_clear;
+            case WeatherConditions.LIGHT_CLOUDS:
+                return R.drawable.art_light_clouds;
+            case WeatherConditions.CLOUDS:
+                return R.drawable.art_clouds;
         }
 
         Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.util.Random;
+
+/**
+ * Generates large amounts of believable weather data, for load testing the ContentProvider, the
+ * forecast list and database migrations at sizes real data will reach.
+ * <p>
+ * Every location gets its own climate, picked from its latitude: a yearly temperature curve that
+ * peaks in summer (July in the north, January in the south), with a wider swing further from the
+ * equator. Each day's weather follows from the day before it, so warm spells and wet weeks look
+ * like they do in real data, and the weather ID comes from the day's temperature, humidity and
+ * season. That gives a realistic mix of IDs: mostly clear and cloudy, rain in wet weather, snow
+ * only below freezing and thunderstorms mostly in summer.
+ * <p>
+ * The generator is deterministic. The same seed and sizes always produce the same rows, and each
+ * location is generated from its own Random, so results can be compared between runs.
+ * <p>
+ * Rows are produced one at a time by {@link #next()}, and {@link #insert} streams them into
+ * WeatherProvider through bulkInsert in batches. Only one batch is in memory at a time, so
+ * millions of rows can be generated without running out of memory.
+ * <p>
+ * Every location's history starts on the first date. Location 0 is stored as the preferred
+ * location, so its days show up in the forecast list; the others are stored as saved locations
+ * named by {@link #getLocationName(int)}.
+ */
+public final class SyntheticWeatherGenerator {
+
+    /* Rows per bulkInsert. Big enough to amortize the transaction, small enough to stay cheap */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final double DAYS_PER_YEAR = 365.25;
+
+    private static final String SAVED_LOCATION_PREFIX = "Synthetic location ";
+
+    /* Day of the year when summer peaks in the northern hemisphere */
+    private static final int NORTHERN_SUMMER_PEAK = 200;
+
+    private final long mSeed;
+    private final int mLocationCount;
+    private final int mDaysPerLocation;
+    private final long mFirstDate;
+
+    /* Where the generator is, and the state of the location being generated */
+    private int mLocation = -1;
+    private int mDay;
+    private Random mRandom;
+    private Climate mClimate;
+    private double mTemperatureAnomaly;
+    private double mHumidity;
+    private double mPressure;
+
+    /**
+     * A location's climate, derived from its latitude.
+     */
+    private static final class Climate {
+        final double meanTemperature;
+        final double seasonalSwing;
+        final double dailyRange;
+        final int summerPeakDay;
+        final double baseHumidity;
+        final double prevailingWindDegrees;
+        final double meanWindSpeed;
+
+        Climate(Random random) {
+            double latitude = -55 + random.nextDouble() * 125;
+            double absLatitude = Math.abs(latitude);
+
+            meanTemperature = 28 - 0.45 * absLatitude + random.nextGaussian() * 2;
+            seasonalSwing = 1 + 0.3 * absLatitude;
+            dailyRange = 5 + random.nextDouble() * 8;
+            summerPeakDay = latitude >= 0
+                    ? NORTHERN_SUMMER_PEAK
+                    : (NORTHERN_SUMMER_PEAK + 183) % 365;
+            baseHumidity = 45 + random.nextDouble() * 40;
+            prevailingWindDegrees = random.nextDouble() * 360;
+            meanWindSpeed = 2 + random.nextDouble() * 12;
+        }
+    }
+
+    /**
+     * @param seed            Seeds every location's Random
+     * @param locationCount   Number of locations to generate history for
+     * @param daysPerLocation Days of history per location
+     * @param firstDate       Normalized date of every location's first day
+     */
+    public SyntheticWeatherGenerator(long seed, int locationCount, int daysPerLocation,
+                                     long firstDate) {
+        if (!SunshineDateUtils.isDateNormalized(firstDate)) {
+            throw new IllegalArgumentException("First date must be normalized");
+        }
+        mSeed = seed;
+        mLocationCount = locationCount;
+        mDaysPerLocation = daysPerLocation;
+        mFirstDate = firstDate;
+        mDay = daysPerLocation;
+    }
+
+    /**
+     * Generates the rows and bulk inserts them into WeatherProvider, one batch at a time.
+     *
+     * @param resolver        Used to reach WeatherProvider
+     * @param seed            Seeds every location's Random
+     * @param locationCount   Number of locations to generate history for
+     * @param daysPerLocation Days of history per location
+     * @param firstDate       Normalized date of every location's first day
+     * @param batchSize       Rows per bulkInsert call
+     * @return The number of rows inserted
+     */
+    public static long insert(ContentResolver resolver, long seed, int locationCount,
+                              int daysPerLocation, long firstDate, int batchSize) {
+        SyntheticWeatherGenerator generator =
+                new SyntheticWeatherGenerator(seed, locationCount, daysPerLocation, firstDate);
+
+        ContentValues[] batch = new ContentValues[batchSize];
+        long rowsInserted = 0;
+        while (generator.hasNext()) {
+            int count = 0;
+            while (count < batchSize && generator.hasNext()) {
+                batch[count++] = generator.next();
+            }
+
+            /* The last batch is usually short, and bulkInsert takes the whole array */
+            ContentValues[] values = batch;
+            if (count < batchSize) {
+                values = new ContentValues[count];
+                System.arraycopy(batch, 0, values, 0, count);
+            }
+            rowsInserted += resolver.bulkInsert(WeatherEntry.CONTENT_URI, values);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * @return The total number of rows this generator produces
+     */
+    public long getRowCount() {
+        return (long) mLocationCount * mDaysPerLocation;
+    }
+
+    /**
+     * @param location Index of a location, from 0 to locationCount - 1
+     * @return The value of the location column for the location's rows
+     */
+    public static String getLocationName(int location) {
+        return location == 0
+                ? WeatherEntry.PREFERRED_LOCATION
+                : SAVED_LOCATION_PREFIX + location;
+    }
+
+    public boolean hasNext() {
+        if (mDaysPerLocation <= 0) return false;
+        return mDay < mDaysPerLocation || mLocation + 1 < mLocationCount;
+    }
+
+    /**
+     * Generates the next row: every day of the first location, then every day of the next one.
+     *
+     * @return The row, ready to be inserted into WeatherProvider
+     */
+    public ContentValues next() {
+        if (mDay >= mDaysPerLocation) {
+            startLocation(mLocation + 1);
+        }
+
+        long date = mFirstDate + mDay * SunshineDateUtils.DAY_IN_MILLIS;
+        ContentValues values = generateDay(date);
+        values.put(WeatherEntry.COLUMN_LOCATION, getLocationName(mLocation));
+        mDay++;
+        return values;
+    }
+
+    private void startLocation(int location) {
+        if (location >= mLocationCount) {
+            throw new IllegalStateException("No more rows to generate");
+        }
+        mLocation = location;
+        mDay = 0;
+
+        /*
+         * Each location gets its own Random, so it doesn't depend on the ones before it.
+         * java.util.Random gives similar first values for nearby seeds, so the seed is scrambled
+         * first; otherwise neighbouring locations would all get the same climate.
+         */
+        mRandom = new Random(scramble(mSeed * 1000003 + location));
+        mClimate = new Climate(mRandom);
+        mTemperatureAnomaly = 0;
+        mHumidity = mClimate.baseHumidity;
+        mPressure = 1013;
+    }
+
+    private ContentValues generateDay(long date) {
+        Random random = mRandom;
+        Climate climate = mClimate;
+
+        /* The seasonal curve, plus an anomaly that carries over from day to day */
+        int dayOfYear = (int) ((date / SunshineDateUtils.DAY_IN_MILLIS) % DAYS_PER_YEAR);
+        double season = Math.cos(2 * Math.PI * (dayOfYear - climate.summerPeakDay) / DAYS_PER_YEAR);
+        mTemperatureAnomaly = 0.7 * mTemperatureAnomaly + random.nextGaussian() * 2;
+        double meanTemperature = climate.meanTemperature
+                + climate.seasonalSwing * season
+                + mTemperatureAnomaly;
+        double range = climate.dailyRange * (0.6 + random.nextDouble() * 0.6);
+        double high = meanTemperature + range / 2;
+        double low = meanTemperature - range / 2;
+
+        /* Humidity and pressure wander around their usual values; low pressure brings wet days */
+        mPressure = 1013 + 0.8 * (mPressure - 1013) + random.nextGaussian() * 5;
+        mHumidity = climate.baseHumidity + 0.75 * (mHumidity - climate.baseHumidity)
+                + random.nextGaussian() * 8 - (mPressure - 1013) * 0.5;
+        int humidity = (int) Math.max(5, Math.min(100, Math.round(mHumidity)));
+
+        double windSpeed = Math.max(0, climate.meanWindSpeed * (0.4 + random.nextDouble())
+                + (1013 - mPressure) * 0.2);
+        double windDegrees = (climate.prevailingWindDegrees + random.nextGaussian() * 60 + 360) % 360;
+
+        int weatherId = pickWeatherId(random, meanTemperature, humidity, windSpeed, season);
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, round(high));
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, round(low));
+        values.put(WeatherEntry.COLUMN_HUMIDITY, humidity);
+        values.put(WeatherEntry.COLUMN_PRESSURE, round(mPressure));
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, round(windSpeed));
+        values.put(WeatherEntry.COLUMN_DEGREES, round(windDegrees));
+        return values;
+    }
+
+    /*
+     * Picks an OpenWeatherMap condition code for the day. The more humid the day, the more likely
+     * it is to rain (or snow, below freezing). Dry days are clear or cloudy, and calm, humid days
+     * can be foggy.
+     */
+    private static int pickWeatherId(Random random, double temperature, int humidity,
+                                     double windSpeed, double season) {
+        double precipitationChance = Math.max(0, (humidity - 60) / 60.0);
+        if (random.nextDouble() < precipitationChance) {
+            if (temperature < 0) {
+                return pick(random, new int[]{600, 600, 601, 601, 602, 611, 621});
+            }
+            /* Thunderstorms happen in warm, summer weather */
+            if (temperature > 18 && season > 0.3 && random.nextDouble() < 0.25) {
+                return pick(random, new int[]{200, 201, 211, 211, 202});
+            }
+            return pick(random, new int[]{300, 500, 500, 500, 501, 501, 502, 520, 521});
+        }
+
+        if (humidity > 85 && windSpeed < 3 && random.nextDouble() < 0.5) {
+            return pick(random, new int[]{701, 741, 741});
+        }
+
+        double clouds = random.nextDouble() + (humidity - 50) / 100.0;
+        if (clouds < 0.35) {
+            return 800;
+        } else if (clouds < 0.55) {
+            return 801;
+        } else if (clouds < 0.75) {
+            return 802;
+        } else if (clouds < 0.95) {
+            return 803;
+        }
+        return 804;
+    }
+
+    /* The SplitMix64 finalizer: every bit of the input affects every bit of the output */
+    private static long scramble(long seed) {
+        seed = (seed ^ (seed >>> 30)) * 0xbf58476d1ce4e5b9L;
+        seed = (seed ^ (seed >>> 27)) * 0x94d049bb133111ebL;
+        return seed ^ (seed >>> 31);
+    }
+
+    private static int pick(Random random, int[] weatherIds) {
+        return weatherIds[random.nextInt(weatherIds.length)];
+    }
+
+    /* Two decimal places, like the values the weather server sends */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
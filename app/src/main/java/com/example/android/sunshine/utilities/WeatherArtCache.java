@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+
+/**
+ * Weather art (the art_* and ic_* drawables) is drawn in the forecast list, the detail screen and
+ * the notification. The art_* drawables are vectors, so every setImageResource inflates and
+ * parses the XML again, and decoding the notification's large icon does the same work on every
+ * sync.
+ * <p>
+ * This class rasterizes each piece of art once, at the size it is displayed at, and keeps the
+ * resulting Bitmaps in a memory-bounded LRU cache keyed by resource ID, size and screen density.
+ * The cache gives memory back when the system asks us to through {@link #trimMemory(int)}.
+ */
+public final class WeatherArtCache {
+
+    /* The cache uses at most this fraction of the memory available to the app */
+    private static final int MEMORY_FRACTION = 16;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(maxCacheSizeInKilobytes()) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
+                }
+            };
+
+    private static int maxCacheSizeInKilobytes() {
+        long maxMemoryInKilobytes = Runtime.getRuntime().maxMemory() / 1024;
+        return (int) (maxMemoryInKilobytes / MEMORY_FRACTION);
+    }
+
+    /**
+     * Returns a Bitmap of a drawable resource, rasterized at the requested size. The first call
+     * for a given resource, size and density draws the art; every later call is a cache lookup.
+     * The returned Bitmap is shared, so it must not be modified or recycled.
+     *
+     * @param context    Used to load the drawable and find the screen density
+     * @param resourceId The drawable to rasterize, such as one returned by
+     *                   {@link SunshineWeatherUtils#getLargeArtResourceIdForWeatherCondition(int)}
+     * @param sizeInPx   Width and height of the Bitmap in pixels
+     * @return The rasterized art
+     */
+    public static Bitmap getArt(Context context, int resourceId, int sizeInPx) {
+        int densityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        String key = resourceId + ":" + sizeInPx + ":" + densityDpi;
+
+        Bitmap art = sCache.get(key);
+        if (art == null) {
+            art = rasterize(context, resourceId, sizeInPx);
+            sCache.put(key, art);
+        }
+        return art;
+    }
+
+    /**
+     * Releases cached art in response to {@link ComponentCallbacks2#onTrimMemory(int)}. Once our
+     * UI is hidden, the art can be redrawn cheaply when we come back, so we drop half of it; if
+     * the system is running low on memory, we drop all of it.
+     *
+     * @param level The trim level passed to onTrimMemory
+     */
+    public static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            sCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            sCache.trimToSize(sCache.size() / 2);
+        }
+    }
+
+    private static Bitmap rasterize(Context context, int resourceId, int sizeInPx) {
+        Drawable drawable = ContextCompat.getDrawable(context, resourceId);
+
+        Bitmap bitmap = Bitmap.createBitmap(sizeInPx, sizeInPx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, sizeInPx, sizeInPx);
+        drawable.draw(canvas);
+
+        return bitmap;
+    }
+}
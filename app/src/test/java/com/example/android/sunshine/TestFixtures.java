@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * What the unit tests share: a fixed point in time, so results don't depend on when the tests
+ * run, and SharedPreferences that start out empty for every test.
+ */
+public final class TestFixtures {
+
+    /* Monday, January 16th 2017, 12:00 UTC, in System.currentTimeMillis() time */
+    public static final long JAN_16_2017_NOON_UTC = 1484568000000L;
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Returns SharedPreferences of their own for a test class, cleared of anything an earlier
+     * test left behind. Call it from the test's @Before method.
+     *
+     * @param name A name no other test class uses, so tests can't see each other's values
+     * @return The empty SharedPreferences
+     */
+    public static SharedPreferences clearedPreferences(String name) {
+        SharedPreferences preferences = RuntimeEnvironment.application
+                .getSharedPreferences(name, Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+        return preferences;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.TestFixtures;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link WeatherProvider} keeps the sync metadata table in step with the weather
+ * table through every kind of write, so {@link SyncMetadata} can be trusted instead of counting
+ * the weather rows.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SyncMetadataTest {
+
+    private static final String SAVED_LOCATION = "Mountain View, CA";
+
+    private static final long FIRST_DATE =
+            SunshineDateUtils.normalizeDate(TestFixtures.JAN_16_2017_NOON_UTC);
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        Robolectric.setupContentProvider(WeatherProvider.class);
+    }
+
+    @Test
+    public void locationWithNoRowsHasNoData() {
+        SyncMetadata metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+
+        assertFalse(metadata.hasData());
+        assertFalse(metadata.hasDataFrom(FIRST_DATE));
+        assertFalse(metadata.hasValidators());
+    }
+
+    @Test
+    public void insertsAreCountedOnce() {
+        insert(WeatherEntry.CONTENT_URI, WeatherEntry.PREFERRED_LOCATION, 0, 14);
+
+        /* Days 10 to 13 are already there and are replaced; days 14 to 19 are new */
+        insert(WeatherEntry.CONTENT_URI, WeatherEntry.PREFERRED_LOCATION, 10, 10);
+
+        SyncMetadata metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertEquals(20, metadata.rowCount);
+        assertEquals(FIRST_DATE, metadata.firstDate);
+        assertEquals(day(19), metadata.lastDate);
+        assertTrue(metadata.hasDataFrom(day(19)));
+        assertFalse(metadata.hasDataFrom(day(20)));
+        assertTrue(metadata.lastUpdatedMillis > 0);
+
+        /* The other location's metadata is its own */
+        assertFalse(SyncMetadata.query(mContext, SAVED_LOCATION).hasData());
+    }
+
+    @Test
+    public void replaceStartsTheCountOver() {
+        insert(WeatherEntry.CONTENT_URI, WeatherEntry.PREFERRED_LOCATION, 0, 14);
+        insert(WeatherEntry.CONTENT_URI, SAVED_LOCATION, 0, 14);
+
+        insert(WeatherEntry.buildReplaceUri(), WeatherEntry.PREFERRED_LOCATION, 5, 3);
+
+        SyncMetadata metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertEquals(3, metadata.rowCount);
+        assertEquals(day(5), metadata.firstDate);
+        assertEquals(day(7), metadata.lastDate);
+        assertEquals(14, SyncMetadata.query(mContext, SAVED_LOCATION).rowCount);
+    }
+
+    @Test
+    public void replaceDeletesRemovedLocations() {
+        insert(WeatherEntry.CONTENT_URI, WeatherEntry.PREFERRED_LOCATION, 0, 14);
+        insert(WeatherEntry.CONTENT_URI, SAVED_LOCATION, 0, 14);
+
+        insert(WeatherEntry.buildReplaceUri(Collections.singletonList(SAVED_LOCATION)),
+                WeatherEntry.PREFERRED_LOCATION, 0, 14);
+
+        assertEquals(14, SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION).rowCount);
+        assertFalse(SyncMetadata.query(mContext, SAVED_LOCATION).hasData());
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOCATION + " = ?", new String[]{SAVED_LOCATION}, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void writesClearTheValidators() {
+        insert(WeatherEntry.buildReplaceUri(), WeatherEntry.PREFERRED_LOCATION, 0, 14);
+        SyncMetadata.updateValidators(mContext, WeatherEntry.PREFERRED_LOCATION,
+                "\"abc\"", "Mon, 16 Jan 2017 12:00:00 GMT");
+
+        SyncMetadata metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertEquals("\"abc\"", metadata.eTag);
+        assertEquals("Mon, 16 Jan 2017 12:00:00 GMT", metadata.lastModified);
+
+        /* The rows no longer match the response the validators came with */
+        insert(WeatherEntry.buildReplaceUri(), WeatherEntry.PREFERRED_LOCATION, 0, 14);
+
+        metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertNull(metadata.eTag);
+        assertNull(metadata.lastModified);
+    }
+
+    @Test
+    public void deletesAreRecounted() {
+        insert(WeatherEntry.CONTENT_URI, WeatherEntry.PREFERRED_LOCATION, 0, 14);
+        insert(WeatherEntry.CONTENT_URI, SAVED_LOCATION, 0, 14);
+        SyncMetadata.updateValidators(mContext, SAVED_LOCATION, "\"abc\"", null);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOCATION + " = ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{WeatherEntry.PREFERRED_LOCATION, Long.toString(day(4))});
+
+        SyncMetadata metadata = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertEquals(10, metadata.rowCount);
+        assertEquals(day(4), metadata.firstDate);
+        assertEquals(day(13), metadata.lastDate);
+
+        /* The delete didn't touch the saved location, so its validators are still good */
+        assertEquals("\"abc\"", SyncMetadata.query(mContext, SAVED_LOCATION).eTag);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        assertFalse(SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION).hasData());
+        assertFalse(SyncMetadata.query(mContext, SAVED_LOCATION).hasData());
+        assertTrue(SyncMetadata.queryAll(mContext).isEmpty());
+    }
+
+    private void insert(Uri uri, String location, int firstDay, int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues value = new ContentValues();
+            value.put(WeatherEntry.COLUMN_LOCATION, location);
+            value.put(WeatherEntry.COLUMN_DATE, day(firstDay + i));
+            value.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            value.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+            value.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0);
+            value.put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+            value.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+            value.put(WeatherEntry.COLUMN_WIND_SPEED, 5.0);
+            value.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+            values[i] = value;
+        }
+        mContext.getContentResolver().bulkInsert(uri, values);
+    }
+
+    private static long day(int day) {
+        return FIRST_DATE + day * SunshineDateUtils.DAY_IN_MILLIS;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how fast {@link WeatherProvider} can bulkInsert, query and delete, on the JVM instead
+ * of on a device.
+ * <p>
+ * Robolectric backs SQLiteDatabase with a real SQLite library running in this process, so the
+ * provider runs the same SQL it runs on a phone. The absolute numbers depend on the machine and
+ * won't match a phone's, but they are good for comparing one version of the provider against
+ * another.
+ * <p>
+ * Each benchmark runs once for every row count in {@link #rowCounts()}: 14 rows is what a normal
+ * sync inserts, and the larger counts show how the provider scales. Every benchmark also checks
+ * that the provider did what it was asked, so a broken provider fails instead of looking fast.
+ * Results are printed to standard out as milliseconds per operation and operations per second,
+ * where one operation is one call to the provider.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class WeatherProviderBenchmark {
+
+    /* Roughly how many rows each benchmark should touch in total, spread over its iterations */
+    private static final int ROWS_PER_BENCHMARK = 100000;
+
+    private static final int MIN_ITERATIONS = 3;
+    private static final int MAX_ITERATIONS = 200;
+
+    private final int mRowCount;
+    private final int mIterations;
+    private final int mWarmupIterations;
+
+    private WeatherProvider mWeatherProvider;
+    private ContentValues[] mWeatherValues;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} rows")
+    public static Collection<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][]{
+                {14},
+                {1000},
+                {100000}
+        });
+    }
+
+    public WeatherProviderBenchmark(int rowCount) {
+        mRowCount = rowCount;
+        mIterations = Math.max(MIN_ITERATIONS,
+                Math.min(MAX_ITERATIONS, ROWS_PER_BENCHMARK / rowCount));
+        mWarmupIterations = Math.max(1, mIterations / 10);
+    }
+
+    /**
+     * Robolectric gives every test a fresh application, so each test starts with an empty
+     * database. All we need to do is create the provider and the rows we'll insert.
+     */
+    @Before
+    public void setUp() {
+        mWeatherProvider = Robolectric.setupContentProvider(WeatherProvider.class);
+        mWeatherValues = createWeatherValues(mRowCount);
+    }
+
+    @Test
+    public void bulkInsert() {
+        long totalNanos = 0;
+        for (int i = 0; i < mWarmupIterations + mIterations; i++) {
+            long start = System.nanoTime();
+            int rowsInserted = mWeatherProvider.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals("Unexpected number of rows inserted", mRowCount, rowsInserted);
+            if (i >= mWarmupIterations) {
+                totalNanos += elapsed;
+            }
+
+            /* Start every iteration from an empty table, outside of the timed part */
+            deleteAll();
+        }
+
+        report("bulkInsert", totalNanos);
+    }
+
+    @Test
+    public void query() {
+        mWeatherProvider.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        long totalNanos = 0;
+        for (int i = 0; i < mWarmupIterations + mIterations; i++) {
+            long start = System.nanoTime();
+            /*
+             * A query is lazy; SQLite only does the work as the cursor is moved. Reading every
+             * row the way the forecast list does is what makes this a fair measurement.
+             */
+            Cursor cursor = mWeatherProvider.query(WeatherEntry.CONTENT_URI, null, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            int rowsRead = 0;
+            try {
+                int dateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+                int maxIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+                while (cursor.moveToNext()) {
+                    cursor.getLong(dateIndex);
+                    cursor.getDouble(maxIndex);
+                    rowsRead++;
+                }
+            } finally {
+                cursor.close();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals("Unexpected number of rows queried", mRowCount, rowsRead);
+            if (i >= mWarmupIterations) {
+                totalNanos += elapsed;
+            }
+        }
+
+        report("query", totalNanos);
+    }
+
+    @Test
+    public void delete() {
+        long totalNanos = 0;
+        for (int i = 0; i < mWarmupIterations + mIterations; i++) {
+            /* Fill the table outside of the timed part */
+            mWeatherProvider.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+            long start = System.nanoTime();
+            int rowsDeleted = deleteAll();
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals("Unexpected number of rows deleted", mRowCount, rowsDeleted);
+            if (i >= mWarmupIterations) {
+                totalNanos += elapsed;
+            }
+        }
+
+        report("delete", totalNanos);
+    }
+
+    private int deleteAll() {
+        return mWeatherProvider.delete(WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    private void report(String operation, long totalNanos) {
+        double msPerOp = totalNanos / 1e6 / mIterations;
+        double opsPerSecond = 1000 / msPerOp;
+        System.out.println(String.format(Locale.US,
+                "WeatherProvider %s, %d rows: %.3f ms/op, %.1f ops/sec, %.0f rows/sec (%d iterations)",
+                operation, mRowCount, msPerOp, opsPerSecond, opsPerSecond * mRowCount,
+                mIterations));
+    }
+
+    /**
+     * Creates one row per day starting today. WeatherProvider only accepts normalized dates, and
+     * the date column is unique, so every row needs its own day.
+     */
+    private static ContentValues[] createWeatherValues(int rowCount) {
+        ContentValues[] weatherValues = new ContentValues[rowCount];
+        long date = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        for (int i = 0; i < rowCount; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, date);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i % 10);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 10);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 50 + i % 40);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1000 + i % 30);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 1.5 + i % 8);
+            values.put(WeatherEntry.COLUMN_DEGREES, (i * 37) % 360);
+            weatherValues[i] = values;
+
+            date += SunshineDateUtils.DAY_IN_MILLIS;
+        }
+
+        return weatherValues;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A stand-in for the weather server that runs inside the test JVM, so the sync path can be
+ * exercised without a network. Point the app at it with
+ * SunshinePreferences.setForecastBaseUrl(context, server.getBaseUrl()).
+ * <p>
+ * It serves a single forecast response, either a recorded one from the test resources or one
+ * generated from a seed, to every request. A {@link FaultProfile} makes it misbehave the ways a
+ * real server and network do: slow to answer, slow to transfer, failing with 5xx or 404, cutting
+ * bodies short, and answering conditional requests with 304 Not Modified. Faults are picked with
+ * a seeded Random, so a run can be repeated exactly.
+ */
+class FakeWeatherServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* How often a throttled response writes, which keeps the throttling smooth */
+    private static final int THROTTLE_WRITES_PER_SECOND = 10;
+
+    /**
+     * What goes wrong, and how often. Rates are probabilities between 0 and 1 and are checked
+     * in the order 5xx, 404, truncated; a request gets at most one of them.
+     */
+    static class FaultProfile {
+
+        final String name;
+        long latencyMillis;
+        long bytesPerSecond;
+        double serverErrorRate;
+        double notFoundRate;
+        double truncatedRate;
+        boolean etags;
+
+        FaultProfile(String name) {
+            this.name = name;
+        }
+
+        /* Time to wait before answering */
+        FaultProfile latency(long millis) {
+            latencyMillis = millis;
+            return this;
+        }
+
+        /* Bandwidth the body is sent at, or 0 for as fast as possible */
+        FaultProfile bandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        FaultProfile serverErrors(double rate) {
+            serverErrorRate = rate;
+            return this;
+        }
+
+        FaultProfile notFound(double rate) {
+            notFoundRate = rate;
+            return this;
+        }
+
+        /* Sends only the first half of the body, and no Content-Length to give it away */
+        FaultProfile truncated(double rate) {
+            truncatedRate = rate;
+            return this;
+        }
+
+        /* Sends an ETag, and answers a matching If-None-Match with 304 Not Modified */
+        FaultProfile etags(boolean etags) {
+            this.etags = etags;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** What the server did with a request */
+    enum Outcome {
+        OK, NOT_MODIFIED, NOT_FOUND, SERVER_ERROR, TRUNCATED
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    /* Guarded by this */
+    private final Random mRandom;
+    private FaultProfile mProfile = new FaultProfile("none");
+    private byte[] mBody;
+    private String mETag;
+    private Outcome mLastOutcome;
+    private long mBytesSent;
+    private int mRequestCount;
+
+    /**
+     * @param seed Seeds the choice of faults
+     */
+    FakeWeatherServer(long seed) throws IOException {
+        mRandom = new Random(seed);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.setExecutor(mExecutor);
+    }
+
+    void start() {
+        mServer.start();
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * The URL to give SunshinePreferences.setForecastBaseUrl. Any path and query is accepted.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/weather";
+    }
+
+    synchronized void setFaultProfile(FaultProfile profile) {
+        mProfile = profile;
+    }
+
+    /**
+     * Serves a response recorded from the real server, from the test resources' forecasts
+     * directory.
+     */
+    void serveRecorded(String name) throws IOException {
+        InputStream in = FakeWeatherServer.class.getResourceAsStream("/forecasts/" + name + ".json");
+        if (in == null) {
+            throw new IOException("No recorded forecast named " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            setBody(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Serves a forecast of the given number of days, generated from the seed. The same seed
+     * always gives the same response.
+     */
+    void serveGenerated(int dayCount, long seed) {
+        setBody(generateForecastJson(dayCount, seed).getBytes(UTF_8));
+    }
+
+    /* The body of a complete, successful response */
+    synchronized String getBody() {
+        return new String(mBody, UTF_8);
+    }
+
+    synchronized Outcome getLastOutcome() {
+        return mLastOutcome;
+    }
+
+    synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    private synchronized void setBody(byte[] body) {
+        mBody = body;
+        mETag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        FaultProfile profile;
+        byte[] body;
+        String eTag;
+        Outcome outcome;
+        synchronized (this) {
+            profile = mProfile;
+            body = mBody;
+            eTag = mETag;
+            outcome = pickOutcome(profile, exchange.getRequestHeaders().getFirst("If-None-Match"));
+            mRequestCount++;
+            mLastOutcome = outcome;
+        }
+
+        sleep(profile.latencyMillis);
+
+        if (profile.etags) {
+            exchange.getResponseHeaders().set("ETag", eTag);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+        switch (outcome) {
+            case NOT_MODIFIED:
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                return;
+
+            case SERVER_ERROR:
+                sendBody(exchange, HttpURLConnection.HTTP_UNAVAILABLE, profile,
+                        "{\"cod\":\"503\",\"message\":\"service unavailable\"}".getBytes(UTF_8), true);
+                return;
+
+            case NOT_FOUND:
+                sendBody(exchange, HttpURLConnection.HTTP_NOT_FOUND, profile,
+                        "{\"cod\":\"404\",\"message\":\"city not found\"}".getBytes(UTF_8), true);
+                return;
+
+            case TRUNCATED:
+                byte[] half = Arrays.copyOf(body, body.length / 2);
+                sendBody(exchange, HttpURLConnection.HTTP_OK, profile, half, false);
+                return;
+
+            default:
+                sendBody(exchange, HttpURLConnection.HTTP_OK, profile, body, true);
+        }
+    }
+
+    private Outcome pickOutcome(FaultProfile profile, String ifNoneMatch) {
+        double roll = mRandom.nextDouble();
+        if (roll < profile.serverErrorRate) {
+            return Outcome.SERVER_ERROR;
+        }
+        roll -= profile.serverErrorRate;
+        if (roll < profile.notFoundRate) {
+            return Outcome.NOT_FOUND;
+        }
+        roll -= profile.notFoundRate;
+        if (roll < profile.truncatedRate) {
+            return Outcome.TRUNCATED;
+        }
+        if (profile.etags && mETag.equals(ifNoneMatch)) {
+            return Outcome.NOT_MODIFIED;
+        }
+        return Outcome.OK;
+    }
+
+    private void sendBody(HttpExchange exchange, int code, FaultProfile profile, byte[] body,
+                          boolean withLength) throws IOException {
+        /* A length of 0 makes HttpServer send the body chunked, without a Content-Length */
+        exchange.sendResponseHeaders(code, withLength ? body.length : 0);
+
+        OutputStream out = exchange.getResponseBody();
+        if (profile.bytesPerSecond <= 0) {
+            out.write(body);
+        } else {
+            int chunkSize = (int) Math.max(1, profile.bytesPerSecond / THROTTLE_WRITES_PER_SECOND);
+            for (int offset = 0; offset < body.length; offset += chunkSize) {
+                out.write(body, offset, Math.min(chunkSize, body.length - offset));
+                out.flush();
+                sleep(1000 / THROTTLE_WRITES_PER_SECOND);
+            }
+        }
+        out.close();
+
+        synchronized (this) {
+            mBytesSent += body.length;
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Builds a response shaped like the real server's daily forecast: a city with coordinates,
+     * and a list of days with temperatures, pressure, humidity, wind and a weather condition.
+     */
+    private static String generateForecastJson(int dayCount, long seed) {
+        Random random = new Random(seed);
+        int[] weatherIds = {800, 801, 802, 803, 804, 500, 501, 502, 300, 211, 600, 701, 741};
+
+        StringBuilder json = new StringBuilder(256 + dayCount * 256);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.0839,\"lat\":37.3861},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(dayCount)
+                .append(",\"list\":[");
+
+        long dt = 1484568000L;
+        for (int i = 0; i < dayCount; i++) {
+            double low = 2 + random.nextDouble() * 12;
+            double high = low + 3 + random.nextDouble() * 10;
+            int weatherId = weatherIds[random.nextInt(weatherIds.length)];
+
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,"
+                            + "\"night\":%.2f,\"eve\":%.2f,\"morn\":%.2f},"
+                            + "\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"Weather\","
+                            + "\"description\":\"generated\",\"icon\":\"01d\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    dt + 86400L * i, (low + high) / 2, low, high,
+                    low + 1, high - 1, low + 0.5,
+                    990 + random.nextDouble() * 45, 30 + random.nextInt(70),
+                    weatherId,
+                    random.nextDouble() * 14, random.nextInt(360), random.nextInt(100)));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+}
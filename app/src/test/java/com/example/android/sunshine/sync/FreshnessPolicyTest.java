@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.TestFixtures;
+import com.example.android.sunshine.data.WeatherContract;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link FreshnessPolicy} ages a forecast from FRESH through STALE to EXPIRED.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FreshnessPolicyTest {
+
+    private static final String PREFERRED = WeatherContract.WeatherEntry.PREFERRED_LOCATION;
+    private static final String SAVED = "London, UK";
+
+    private static final long SYNCED = TestFixtures.JAN_16_2017_NOON_UTC;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private FreshnessPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mPolicy = new FreshnessPolicy(TestFixtures.clearedPreferences("freshness_test"));
+    }
+
+    @Test
+    public void neverSyncedIsExpired() {
+        assertEquals(FreshnessPolicy.EXPIRED, mPolicy.getFreshness(PREFERRED, SYNCED));
+    }
+
+    @Test
+    public void agesThroughTheDefaultTtls() {
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+
+        assertEquals(FreshnessPolicy.FRESH, mPolicy.getFreshness(PREFERRED, SYNCED));
+        assertEquals(FreshnessPolicy.FRESH, mPolicy.getFreshness(PREFERRED,
+                SYNCED + FreshnessPolicy.DEFAULT_SOFT_TTL_MILLIS - 1));
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(PREFERRED,
+                SYNCED + FreshnessPolicy.DEFAULT_SOFT_TTL_MILLIS));
+        assertEquals(FreshnessPolicy.EXPIRED, mPolicy.getFreshness(PREFERRED,
+                SYNCED + FreshnessPolicy.DEFAULT_HARD_TTL_MILLIS));
+    }
+
+    @Test
+    public void periodicSyncIsNeverSkipped() {
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+
+        /* Allow a flex time of slack for when the last sync was recorded and the job was timed */
+        long earliest = SYNCED + TimeUnit.SECONDS.toMillis(SunshineSyncUtils.SYNC_INTERVAL_SECONDS
+                - SunshineSyncUtils.SYNC_FLEXTIME_SECONDS);
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(PREFERRED, earliest));
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(PREFERRED,
+                SYNCED + TimeUnit.SECONDS.toMillis(SunshineSyncUtils.SYNC_INTERVAL_SECONDS)));
+    }
+
+    @Test
+    public void locationsHaveTheirOwnTtls() {
+        mPolicy.setTtl(SAVED, 12 * HOUR, 48 * HOUR);
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+        mPolicy.onSyncSucceeded(SAVED, SYNCED);
+
+        long later = SYNCED + 6 * HOUR;
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(PREFERRED, later));
+        assertEquals(FreshnessPolicy.FRESH, mPolicy.getFreshness(SAVED, later));
+
+        long muchLater = SYNCED + 30 * HOUR;
+        assertEquals(FreshnessPolicy.EXPIRED, mPolicy.getFreshness(PREFERRED, muchLater));
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(SAVED, muchLater));
+    }
+
+    @Test
+    public void invalidatedIsExpired() {
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+        mPolicy.invalidate(PREFERRED);
+
+        assertEquals(FreshnessPolicy.EXPIRED, mPolicy.getFreshness(PREFERRED, SYNCED));
+        assertEquals(0, mPolicy.getLastSyncMillis(PREFERRED));
+    }
+
+    @Test
+    public void failureLastsUntilTheNextSuccess() {
+        mPolicy.invalidate(PREFERRED);
+        mPolicy.onSyncFailed(PREFERRED);
+
+        assertTrue(mPolicy.hasSyncFailed(PREFERRED));
+        assertFalse(mPolicy.hasSyncFailed(SAVED));
+        assertEquals(FreshnessPolicy.EXPIRED, mPolicy.getFreshness(PREFERRED, SYNCED));
+
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+        assertFalse(mPolicy.hasSyncFailed(PREFERRED));
+
+        /* A new invalidation means a new sync to wait for */
+        mPolicy.onSyncFailed(PREFERRED);
+        mPolicy.invalidate(PREFERRED);
+        assertFalse(mPolicy.hasSyncFailed(PREFERRED));
+    }
+
+    @Test
+    public void syncInTheFutureIsRevalidated() {
+        mPolicy.onSyncSucceeded(PREFERRED, SYNCED);
+
+        assertEquals(FreshnessPolicy.STALE, mPolicy.getFreshness(PREFERRED, SYNCED - HOUR));
+    }
+}
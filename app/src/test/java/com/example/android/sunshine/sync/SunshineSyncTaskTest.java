@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncMetadata;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.sync.FakeWeatherServer.FaultProfile;
+import com.example.android.sunshine.sync.FakeWeatherServer.Outcome;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks when {@link SunshineSyncTask} makes its requests conditional, against a
+ * {@link FakeWeatherServer} that sends ETags.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SunshineSyncTaskTest {
+
+    private static final long FAULT_SEED = 42;
+    private static final long FORECAST_SEED = 7;
+    private static final int FORECAST_DAYS = 14;
+
+    private Context mContext;
+    private FakeWeatherServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        Robolectric.setupContentProvider(WeatherProvider.class);
+
+        mServer = new FakeWeatherServer(FAULT_SEED);
+        mServer.serveGenerated(FORECAST_DAYS, FORECAST_SEED);
+        mServer.setFaultProfile(new FaultProfile("etags").etags(true));
+        mServer.start();
+
+        SunshinePreferences.setForecastBaseUrl(mContext, mServer.getBaseUrl());
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putBoolean(mContext.getString(R.string.pref_enable_notifications_key), false)
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        SunshinePreferences.setForecastBaseUrl(mContext, null);
+    }
+
+    @Test
+    public void unchangedForecastIsRevalidated() {
+        assertEquals(SyncRetryPolicy.RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+        assertEquals(Outcome.OK, mServer.getLastOutcome());
+
+        assertEquals(SyncRetryPolicy.RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+        assertEquals(Outcome.NOT_MODIFIED, mServer.getLastOutcome());
+    }
+
+    @Test
+    public void forecastFromYesterdayIsFetchedInFull() throws Exception {
+        assertEquals(SyncRetryPolicy.RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+        SyncMetadata synced = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertNotNull(synced.eTag);
+
+        /*
+         * Turn the clock forward a day by moving the forecast back one instead: the same
+         * response, with the same validators, parsed yesterday.
+         */
+        ContentValues[] yesterdays = OpenWeatherJsonUtils.getWeatherContentValuesFromJson(
+                mContext, mServer.getBody(), WeatherEntry.PREFERRED_LOCATION);
+        for (ContentValues values : yesterdays) {
+            values.put(WeatherEntry.COLUMN_DATE, values.getAsLong(WeatherEntry.COLUMN_DATE)
+                    - SunshineDateUtils.DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.buildReplaceUri(), yesterdays);
+        SyncMetadata.updateValidators(mContext, WeatherEntry.PREFERRED_LOCATION,
+                synced.eTag, synced.lastModified);
+
+        /* A 304 would keep yesterday's dates, so the request mustn't be conditional */
+        assertEquals(SyncRetryPolicy.RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+        assertEquals(Outcome.OK, mServer.getLastOutcome());
+
+        SyncMetadata refetched = SyncMetadata.query(mContext, WeatherEntry.PREFERRED_LOCATION);
+        assertEquals(SunshineDateUtils.getNormalizedUtcDateForToday(), refetched.firstDate);
+        assertEquals(FORECAST_DAYS, refetched.rowCount);
+    }
+}
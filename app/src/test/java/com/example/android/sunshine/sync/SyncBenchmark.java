@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.sync.FakeWeatherServer.FaultProfile;
+import com.example.android.sunshine.sync.FakeWeatherServer.Outcome;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.genenakagaki.shared.OpenWeatherForecast;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the whole sync, {@link SunshineSyncTask#syncWeather(Context)}, against a
+ * {@link FakeWeatherServer} under each of a set of fault profiles: the request, parsing the
+ * response, and replacing the weather in {@link WeatherProvider}.
+ * <p>
+ * For each profile it prints the sync latency percentiles, how many syncs got good data, and
+ * the throughput in syncs and kilobytes per second. Profiles that inject faults are expected to
+ * fail some syncs; what matters is how long those take and that the good ones still land.
+ * <p>
+ * It also syncs saved locations alongside the preferred one. Their fetches run in parallel, so
+ * a sync of every location should take about as long as a sync of one; the ratio is printed.
+ * <p>
+ * Faults are seeded, so two runs of the same code see the same sequence of failures.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SyncBenchmark {
+
+    private static final int SYNCS_PER_PROFILE = 40;
+
+    private static final long FAULT_SEED = 42;
+    private static final long FORECAST_SEED = 7;
+    private static final int FORECAST_DAYS = 14;
+
+    /* Saved locations synced alongside the preferred one by syncSavedLocations */
+    private static final int SAVED_LOCATIONS = 7;
+    private static final int SYNCS_PER_LOCATION_COUNT = 10;
+
+    private final FaultProfile mProfile;
+
+    private Context mContext;
+    private FakeWeatherServer mServer;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}")
+    public static Collection<Object[]> faultProfiles() {
+        return Arrays.asList(new Object[][]{
+                {new FaultProfile("baseline")},
+                {new FaultProfile("slow_network").latency(300).bandwidth(16 * 1024)},
+                {new FaultProfile("flaky_server").serverErrors(0.1).notFound(0.02)},
+                {new FaultProfile("truncated_bodies").truncated(0.2)},
+                {new FaultProfile("etags").latency(50).etags(true)}
+        });
+    }
+
+    public SyncBenchmark(FaultProfile profile) {
+        mProfile = profile;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        Robolectric.setupContentProvider(WeatherProvider.class);
+
+        mServer = new FakeWeatherServer(FAULT_SEED);
+        mServer.serveGenerated(FORECAST_DAYS, FORECAST_SEED);
+        mServer.setFaultProfile(mProfile);
+        mServer.start();
+
+        SunshinePreferences.setForecastBaseUrl(mContext, mServer.getBaseUrl());
+
+        /* Notifications aren't part of what we're measuring */
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putBoolean(mContext.getString(R.string.pref_enable_notifications_key), false)
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        SunshinePreferences.setForecastBaseUrl(mContext, null);
+        SunshinePreferences.setSavedLocations(mContext, Collections.<String>emptyList());
+    }
+
+    @Test
+    public void sync() throws Exception {
+        long[] syncNanos = new long[SYNCS_PER_PROFILE];
+        int successes = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < SYNCS_PER_PROFILE; i++) {
+            long syncStart = System.nanoTime();
+            SunshineSyncTask.syncWeather(mContext);
+            syncNanos[i] = System.nanoTime() - syncStart;
+
+            Outcome outcome = mServer.getLastOutcome();
+            if (outcome == Outcome.OK || outcome == Outcome.NOT_MODIFIED) {
+                successes++;
+            }
+        }
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals("Every sync should make exactly one request",
+                SYNCS_PER_PROFILE, mServer.getRequestCount());
+
+        /*
+         * Whatever failed along the way, the last good response must be what's in the database.
+         * The server sends the same forecast every time, so that's the forecast it serves.
+         * Under the fault-free profile every sync must have succeeded.
+         */
+        if (successes > 0) {
+            assertEquals("Unexpected number of days in the database",
+                    FORECAST_DAYS, countWeatherRows());
+            assertStoredForecastMatches(mServer.getBody());
+        }
+        if (mProfile.serverErrorRate == 0 && mProfile.notFoundRate == 0
+                && mProfile.truncatedRate == 0) {
+            assertEquals(SYNCS_PER_PROFILE, successes);
+        }
+
+        Arrays.sort(syncNanos);
+        System.out.println(String.format(Locale.US,
+                "Sync %s: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms, "
+                        + "%d/%d good, %.2f syncs/sec, %.1f KB/sec",
+                mProfile, percentileMillis(syncNanos, 50), percentileMillis(syncNanos, 90),
+                percentileMillis(syncNanos, 99), syncNanos[syncNanos.length - 1] / 1e6,
+                successes, SYNCS_PER_PROFILE, SYNCS_PER_PROFILE / totalSeconds,
+                mServer.getBytesSent() / 1024.0 / totalSeconds));
+    }
+
+    @Test
+    public void syncSavedLocations() {
+        /* The preferred location on its own first, to compare against */
+        double oneLocationMillis = timeSyncsMillis(SYNCS_PER_LOCATION_COUNT);
+
+        List<String> savedLocations = new ArrayList<>();
+        for (int i = 1; i <= SAVED_LOCATIONS; i++) {
+            savedLocations.add("Saved location " + i);
+        }
+        SunshinePreferences.setSavedLocations(mContext, savedLocations);
+
+        double allLocationsMillis = timeSyncsMillis(SYNCS_PER_LOCATION_COUNT);
+
+        int locationCount = 1 + SAVED_LOCATIONS;
+        assertEquals("Every sync should make exactly one request per location",
+                SYNCS_PER_LOCATION_COUNT * (1 + locationCount), mServer.getRequestCount());
+        if (mProfile.serverErrorRate == 0 && mProfile.notFoundRate == 0
+                && mProfile.truncatedRate == 0) {
+            assertEquals("Every location's forecast should be in the database",
+                    FORECAST_DAYS * locationCount, countWeatherRows());
+        }
+
+        System.out.println(String.format(Locale.US,
+                "Sync %s, %d locations: %.1f ms per sync, vs %.1f ms for 1 location (%.2fx)",
+                mProfile, locationCount, allLocationsMillis, oneLocationMillis,
+                allLocationsMillis / oneLocationMillis));
+    }
+
+    /* Returns the mean time of a sync */
+    private double timeSyncsMillis(int syncs) {
+        long start = System.nanoTime();
+        for (int i = 0; i < syncs; i++) {
+            SunshineSyncTask.syncWeather(mContext);
+        }
+        return (System.nanoTime() - start) / 1e6 / syncs;
+    }
+
+    /* Checks the preferred location's rows, day by day, against the forecast in the response */
+    private void assertStoredForecastMatches(String json) throws Exception {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        OpenWeatherForecast expected = OpenWeatherForecast.parse(json, today);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP},
+                WeatherContract.WeatherEntry.getSqlSelectForPreferredLocation(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertEquals(expected.getDayCount(), cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(expected.dates[i], cursor.getLong(0));
+                assertEquals("Weather ID of day " + i, expected.weatherIds[i], cursor.getInt(1));
+                assertEquals("High of day " + i, expected.highs[i], cursor.getDouble(2), 0);
+                assertEquals("Low of day " + i, expected.lows[i], cursor.getDouble(3), 0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Expects sorted values */
+    private static double percentileMillis(long[] sortedNanos, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.TestFixtures;
+import com.example.android.sunshine.utilities.NetworkUtils;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link SyncRetryPolicy} classifies failures, how far apart it spaces retries, and
+ * when it opens and closes the circuit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SyncRetryPolicyTest {
+
+    private static final long NOW = TestFixtures.JAN_16_2017_NOON_UTC;
+
+    private SharedPreferences mPreferences;
+    private SyncRetryPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mPreferences = TestFixtures.clearedPreferences("sync_retry_test");
+        mPolicy = new SyncRetryPolicy(mPreferences, new Random(42));
+    }
+
+    @Test
+    public void classifiesFailures() {
+        assertEquals(SyncRetryPolicy.RESULT_TIMEOUT,
+                SyncRetryPolicy.classify(new SocketTimeoutException()));
+        assertEquals(SyncRetryPolicy.RESULT_SERVER_ERROR,
+                SyncRetryPolicy.classify(new NetworkUtils.HttpStatusException(503)));
+        assertEquals(SyncRetryPolicy.RESULT_LOCATION_NOT_FOUND,
+                SyncRetryPolicy.classify(new NetworkUtils.HttpStatusException(404)));
+        assertEquals(SyncRetryPolicy.RESULT_NETWORK_ERROR,
+                SyncRetryPolicy.classify(new IOException()));
+        assertEquals(SyncRetryPolicy.RESULT_PARSE_ERROR,
+                SyncRetryPolicy.classify(new JSONException("truncated")));
+    }
+
+    @Test
+    public void backoffDoublesWithJitterUpToTheCap() {
+        for (int retry = 1; retry <= 20; retry++) {
+            long backoff = Math.min(SyncRetryPolicy.MAX_BACKOFF_MILLIS,
+                    SyncRetryPolicy.BASE_BACKOFF_MILLIS << (retry - 1));
+            for (int i = 0; i < 100; i++) {
+                long delay = mPolicy.getBackoffMillis(retry);
+                assertTrue("Retry " + retry + " waited too little: " + delay, delay >= backoff / 2);
+                assertTrue("Retry " + retry + " waited too long: " + delay, delay <= backoff);
+            }
+        }
+    }
+
+    @Test
+    public void failuresThatWontGoAwayAreNotRetried() {
+        assertEquals(SyncRetryPolicy.NO_RETRY,
+                mPolicy.onSyncResult(SyncRetryPolicy.RESULT_LOCATION_NOT_FOUND, NOW));
+        assertEquals(SyncRetryPolicy.NO_RETRY,
+                mPolicy.onSyncResult(SyncRetryPolicy.RESULT_PARSE_ERROR, NOW));
+        assertFalse(mPolicy.isCircuitOpen(NOW));
+    }
+
+    @Test
+    public void networkErrorsStopRetryingAfterMaxRetries() {
+        for (int i = 0; i < SyncRetryPolicy.MAX_RETRIES; i++) {
+            assertTrue(mPolicy.onSyncResult(SyncRetryPolicy.RESULT_NETWORK_ERROR, NOW) > 0);
+        }
+        assertEquals(SyncRetryPolicy.NO_RETRY,
+                mPolicy.onSyncResult(SyncRetryPolicy.RESULT_NETWORK_ERROR, NOW));
+
+        /* Network errors aren't the server's fault */
+        assertFalse(mPolicy.isCircuitOpen(NOW));
+    }
+
+    @Test
+    public void repeatedServerFailuresOpenTheCircuit() {
+        for (int i = 1; i < SyncRetryPolicy.CIRCUIT_FAILURE_THRESHOLD; i++) {
+            assertTrue(mPolicy.onSyncResult(SyncRetryPolicy.RESULT_SERVER_ERROR, NOW) > 0);
+            assertFalse(mPolicy.isCircuitOpen(NOW));
+        }
+
+        assertEquals(SyncRetryPolicy.NO_RETRY,
+                mPolicy.onSyncResult(SyncRetryPolicy.RESULT_TIMEOUT, NOW));
+        assertTrue(mPolicy.isCircuitOpen(NOW));
+        assertTrue(mPolicy.isCircuitOpen(NOW + SyncRetryPolicy.CIRCUIT_OPEN_MILLIS - 1));
+
+        /* Once it's been open long enough, a trial sync is let through, and failing reopens it */
+        long later = NOW + SyncRetryPolicy.CIRCUIT_OPEN_MILLIS;
+        assertFalse(mPolicy.isCircuitOpen(later));
+        assertEquals(SyncRetryPolicy.NO_RETRY,
+                mPolicy.onSyncResult(SyncRetryPolicy.RESULT_SERVER_ERROR, later));
+        assertTrue(mPolicy.isCircuitOpen(later));
+
+        /* A success closes it */
+        mPolicy.onSyncResult(SyncRetryPolicy.RESULT_SUCCESS, later);
+        assertFalse(mPolicy.isCircuitOpen(later));
+    }
+
+    @Test
+    public void circuitClosesIfTheClockIsSetBack() {
+        for (int i = 0; i < SyncRetryPolicy.CIRCUIT_FAILURE_THRESHOLD; i++) {
+            mPolicy.onSyncResult(SyncRetryPolicy.RESULT_SERVER_ERROR, NOW);
+        }
+        assertTrue(mPolicy.isCircuitOpen(NOW));
+        assertFalse(mPolicy.isCircuitOpen(NOW - SyncRetryPolicy.CIRCUIT_OPEN_MILLIS));
+    }
+}
@@ -0,0 +1,60 @@
+package com.genenakagaki.benchmarks;
+
+import com.genenakagaki.shared.OpenWeatherForecast;
+import com.genenakagaki.shared.WeatherDates;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses recorded OpenWeatherMap responses the way the app does after every sync.
+ * <p>
+ * Only {@link OpenWeatherForecast#parse} is measured. Copying the parsed days into
+ * ContentValues, which OpenWeatherJsonUtils does next, needs Android and is left out.
+ */
+@State(Scope.Benchmark)
+public class OpenWeatherForecastBenchmark {
+
+    @Param({"mountain_view_7_days", "london_14_days", "tokyo_16_days", "not_found"})
+    public String response;
+
+    private String mJson;
+    private long mStartDay;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = readResource("/forecasts/" + response + ".json");
+        mStartDay = WeatherDates.getNormalizedUtcDateForToday();
+    }
+
+    @Benchmark
+    public OpenWeatherForecast parse() throws JSONException {
+        return OpenWeatherForecast.parse(mJson, mStartDay);
+    }
+
+    static String readResource(String name) throws IOException {
+        InputStream in = OpenWeatherForecastBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.genenakagaki.benchmarks;
+
+import com.genenakagaki.shared.WeatherConditions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The condition lookup behind every weather icon and art lookup, on the phone and the watch.
+ */
+@State(Scope.Thread)
+public class WeatherConditionsBenchmark {
+
+    // Condition codes in the proportions a typical forecast has them, plus an unknown one
+    private static final int[] WEATHER_IDS =
+            {800, 800, 801, 802, 803, 804, 500, 501, 502, 300, 211, 600, 701, 741, 521, 999};
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void getCondition(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            blackhole.consume(WeatherConditions.getCondition(weatherId));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.genenakagaki.benchmarks;
+
+import com.genenakagaki.shared.WeatherDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The date arithmetic behind SunshineDateUtils, which runs for every row the forecast list binds.
+ * <p>
+ * getFriendlyDateString is not measured here; it formats through android.text.format.DateUtils
+ * and string resources, which only exist on a device or under Robolectric.
+ */
+@State(Scope.Thread)
+public class WeatherDatesBenchmark {
+
+    // Not final, so the JIT can't fold the arithmetic into a constant
+    private long mDate = 1484568123456L;
+
+    @Benchmark
+    public long normalizeDate() {
+        return WeatherDates.normalizeDate(mDate);
+    }
+
+    @Benchmark
+    public boolean isDateNormalized() {
+        return WeatherDates.isDateNormalized(mDate);
+    }
+
+    @Benchmark
+    public long getNormalizedUtcDateForToday() {
+        return WeatherDates.getNormalizedUtcDateForToday();
+    }
+}
@@ -0,0 +1,41 @@
+package com.genenakagaki.benchmarks;
+
+import com.genenakagaki.shared.WeatherFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Formats a temperature and a wind in both units, through the same {@link WeatherFormat} calls
+ * SunshineWeatherUtils makes.
+ * <p>
+ * Only the patterns are copies, of format_temperature and format_wind_kmh/mph from the app's
+ * strings.xml, since resources aren't available on the JVM.
+ */
+@State(Scope.Thread)
+public class WeatherFormatBenchmark {
+
+    private static final String FORMAT_TEMPERATURE = "%1.0f\u00B0";
+    private static final String FORMAT_WIND_KMH = "%1$1.0f km/h %2$s";
+    private static final String FORMAT_WIND_MPH = "%1$1.0f mph %2$s";
+
+    @Param({"true", "false"})
+    public boolean metric;
+
+    private double mTemperature = 21.37;
+    private float mWindSpeed = 12.7f;
+    private float mWindDegrees = 353;
+
+    @Benchmark
+    public String formatTemperature() {
+        return WeatherFormat.formatTemperature(FORMAT_TEMPERATURE, mTemperature, metric);
+    }
+
+    @Benchmark
+    public String getFormattedWind() {
+        return WeatherFormat.formatWind(FORMAT_WIND_KMH, FORMAT_WIND_MPH, mWindSpeed, mWindDegrees,
+                metric);
+    }
+}
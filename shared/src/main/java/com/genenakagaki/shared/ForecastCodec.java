@@ -0,0 +1,165 @@
+package com.genenakagaki.shared;
+
+/**
+ * Binary format of the forecast the phone sends to the watch.
+ *
+ * <pre>
+ * header  byte   version
+ *         byte   flags
+ *         short  number of days
+ * day     long   date (normalized UTC millis)
+ *         short  weather condition id
+ *         short  high temperature, tenths of a degree celsius
+ *         short  low temperature, tenths of a degree celsius
+ * </pre>
+ *
+ * All fields are big endian and fixed width, so a day can be read straight out of the payload
+ * without parsing or allocating. Temperatures are always celsius; {@link #FLAG_IMPERIAL} tells
+ * the reader which unit the user wants them shown in.
+ */
+public final class ForecastCodec {
+
+    public static final int VERSION = 1;
+
+    public static final int FLAG_IMPERIAL = 1;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int DAY_SIZE = 14;
+
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_FLAGS = 1;
+    private static final int OFFSET_DAY_COUNT = 2;
+
+    private static final int DAY_OFFSET_DATE = 0;
+    private static final int DAY_OFFSET_WEATHER_ID = 8;
+    private static final int DAY_OFFSET_HIGH = 10;
+    private static final int DAY_OFFSET_LOW = 12;
+
+    private ForecastCodec() {
+    }
+
+    /**
+     * Creates an empty payload with room for the given number of days. Fill it in with
+     * {@link #putDay}.
+     */
+    public static byte[] newPayload(int flags, int dayCount) {
+        byte[] payload = new byte[HEADER_SIZE + dayCount * DAY_SIZE];
+        payload[OFFSET_VERSION] = VERSION;
+        payload[OFFSET_FLAGS] = (byte) flags;
+        writeShort(payload, OFFSET_DAY_COUNT, dayCount);
+        return payload;
+    }
+
+    public static void putDay(byte[] payload, int day, long date, int weatherId,
+                              double highCelsius, double lowCelsius) {
+        int offset = dayOffset(day);
+        writeLong(payload, offset + DAY_OFFSET_DATE, date);
+        writeShort(payload, offset + DAY_OFFSET_WEATHER_ID, weatherId);
+        writeShort(payload, offset + DAY_OFFSET_HIGH, toDeciDegrees(highCelsius));
+        writeShort(payload, offset + DAY_OFFSET_LOW, toDeciDegrees(lowCelsius));
+    }
+
+    /**
+     * Returns a one day payload holding a copy of the given day, with the same flags.
+     */
+    public static byte[] copyDay(byte[] payload, int day) {
+        byte[] dayPayload = newPayload(getFlags(payload), 1);
+        System.arraycopy(payload, dayOffset(day), dayPayload, HEADER_SIZE, DAY_SIZE);
+        return dayPayload;
+    }
+
+    /**
+     * Returns true if the payload is in a version this codec reads and is as long as its header
+     * says. Check this before reading anything else out of a payload that came over the wire.
+     */
+    public static boolean isValid(byte[] payload) {
+        return payload != null
+                && payload.length >= HEADER_SIZE
+                && payload[OFFSET_VERSION] == VERSION
+                && payload.length == HEADER_SIZE + getDayCount(payload) * DAY_SIZE;
+    }
+
+    public static int getFlags(byte[] payload) {
+        return payload[OFFSET_FLAGS] & 0xff;
+    }
+
+    public static boolean isImperial(byte[] payload) {
+        return (getFlags(payload) & FLAG_IMPERIAL) != 0;
+    }
+
+    public static int getDayCount(byte[] payload) {
+        return readShort(payload, OFFSET_DAY_COUNT) & 0xffff;
+    }
+
+    public static long getDate(byte[] payload, int day) {
+        return readLong(payload, dayOffset(day) + DAY_OFFSET_DATE);
+    }
+
+    public static int getWeatherId(byte[] payload, int day) {
+        return readShort(payload, dayOffset(day) + DAY_OFFSET_WEATHER_ID) & 0xffff;
+    }
+
+    public static int getHighDeciDegrees(byte[] payload, int day) {
+        return readShort(payload, dayOffset(day) + DAY_OFFSET_HIGH);
+    }
+
+    public static int getLowDeciDegrees(byte[] payload, int day) {
+        return readShort(payload, dayOffset(day) + DAY_OFFSET_LOW);
+    }
+
+    /**
+     * Returns the index of the day with the given date, or -1 if the payload doesn't have it.
+     */
+    public static int indexOfDate(byte[] payload, long date) {
+        int dayCount = getDayCount(payload);
+        for (int day = 0; day < dayCount; day++) {
+            if (getDate(payload, day) == date) {
+                return day;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converts tenths of a degree celsius to whole degrees in the requested unit, rounded.
+     */
+    public static int toDegrees(int deciDegreesCelsius, boolean imperial) {
+        if (imperial) {
+            return Math.round(deciDegreesCelsius * 9 / 50f + 32);
+        }
+        return Math.round(deciDegreesCelsius / 10f);
+    }
+
+    private static int toDeciDegrees(double celsius) {
+        long deciDegrees = Math.round(celsius * 10);
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, deciDegrees));
+    }
+
+    private static int dayOffset(int day) {
+        return HEADER_SIZE + day * DAY_SIZE;
+    }
+
+    private static void writeShort(byte[] payload, int offset, int value) {
+        payload[offset] = (byte) (value >> 8);
+        payload[offset + 1] = (byte) value;
+    }
+
+    private static short readShort(byte[] payload, int offset) {
+        return (short) (((payload[offset] & 0xff) << 8) | (payload[offset + 1] & 0xff));
+    }
+
+    private static void writeLong(byte[] payload, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            payload[offset + i] = (byte) value;
+            value >>= 8;
+        }
+    }
+
+    private static long readLong(byte[] payload, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (payload[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
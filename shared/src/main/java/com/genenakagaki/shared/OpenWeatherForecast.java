@@ -0,0 +1,137 @@
+package com.genenakagaki.shared;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+
+/**
+ * A daily forecast parsed from an OpenWeatherMap response. Day i is at index i of every array,
+ * and its date is the normalized start day plus i days.
+ * <p>
+ * The org.json classes come from the Android platform on devices, so this module only compiles
+ * against them.
+ */
+public final class OpenWeatherForecast {
+
+    /* Location information */
+    private static final String OWM_CITY = "city";
+    private static final String OWM_COORD = "coord";
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    /* Each day's forecast is an element of the "list" array */
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    /* All temperatures are children of the "temp" object */
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    public final double latitude;
+    public final double longitude;
+
+    public final long[] dates;
+    public final double[] pressures;
+    public final int[] humidities;
+    public final double[] windSpeeds;
+    public final double[] windDirections;
+    public final double[] highs;
+    public final double[] lows;
+    public final int[] weatherIds;
+
+    private OpenWeatherForecast(double latitude, double longitude, int dayCount) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        dates = new long[dayCount];
+        pressures = new double[dayCount];
+        humidities = new int[dayCount];
+        windSpeeds = new double[dayCount];
+        windDirections = new double[dayCount];
+        highs = new double[dayCount];
+        lows = new double[dayCount];
+        weatherIds = new int[dayCount];
+    }
+
+    public int getDayCount() {
+        return dates.length;
+    }
+
+    /**
+     * Parses a daily forecast response.
+     *
+     * @param forecastJsonStr       The response body
+     * @param normalizedUtcStartDay The normalized date of the first day. The dates in the
+     *                              response are ignored, and days are assumed to be in order.
+     * @return The forecast, or null if the response carries an error code
+     * @throws JSONException If the response isn't a forecast
+     */
+    public static OpenWeatherForecast parse(String forecastJsonStr, long normalizedUtcStartDay)
+            throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        /* Anything but 200 means a bad location or a server error */
+        if (getMessageCode(forecastJson) != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityCoord = forecastJson.getJSONObject(OWM_CITY).getJSONObject(OWM_COORD);
+        OpenWeatherForecast forecast = new OpenWeatherForecast(
+                cityCoord.getDouble(OWM_LATITUDE),
+                cityCoord.getDouble(OWM_LONGITUDE),
+                jsonWeatherArray.length());
+
+        for (int i = 0; i < jsonWeatherArray.length(); i++) {
+            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
+
+            forecast.dates[i] = normalizedUtcStartDay + WeatherDates.DAY_IN_MILLIS * i;
+            forecast.pressures[i] = dayForecast.getDouble(OWM_PRESSURE);
+            forecast.humidities[i] = dayForecast.getInt(OWM_HUMIDITY);
+            forecast.windSpeeds[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            forecast.windDirections[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            /* The weather code is in a child array called "weather", which is 1 element long */
+            forecast.weatherIds[i] = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0)
+                    .getInt(OWM_WEATHER_ID);
+
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            forecast.highs[i] = temperatureObject.getDouble(OWM_MAX);
+            forecast.lows[i] = temperatureObject.getDouble(OWM_MIN);
+        }
+
+        return forecast;
+    }
+
+    /**
+     * Reads the error code from a response that {@link #parse} returned null for: 404 when the
+     * location wasn't found, and the server's status code otherwise.
+     *
+     * @param forecastJsonStr The response body
+     * @return The response's code, or 200 if it has none
+     * @throws JSONException If the response isn't JSON
+     */
+    public static int getMessageCode(String forecastJsonStr) throws JSONException {
+        return getMessageCode(new JSONObject(forecastJsonStr));
+    }
+
+    /* A missing code means success */
+    private static int getMessageCode(JSONObject forecastJson) throws JSONException {
+        if (!forecastJson.has(OWM_MESSAGE_CODE)) {
+            return HttpURLConnection.HTTP_OK;
+        }
+        return forecastJson.getInt(OWM_MESSAGE_CODE);
+    }
+}
@@ -0,0 +1,44 @@
+package com.genenakagaki.shared;
+
+/**
+ * Data layer paths and keys shared by the phone and the watch.
+ * <p>
+ * Each day of the forecast is its own data item at /weather/&lt;date&gt;, holding a one day
+ * {@link ForecastCodec} payload under {@link #KEY_FORECAST}. Keeping days separate means a sync
+ * only has to send the days that changed.
+ */
+public final class WearContract {
+
+    public static final String PATH_WEATHER = "/weather";
+
+    public static final String KEY_FORECAST = "forecast";
+
+    /**
+     * Capability advertised by watches running the Sunshine watch face, used by the phone to know
+     * which nodes to publish to.
+     */
+    public static final String CAPABILITY_WATCH_FACE = "sunshine_watch_face";
+
+    private static final String PATH_WEATHER_DAY_PREFIX = PATH_WEATHER + "/";
+
+    private WearContract() {
+    }
+
+    public static String buildWeatherPathForDate(long date) {
+        return PATH_WEATHER_DAY_PREFIX + date;
+    }
+
+    /**
+     * Returns the date a /weather/&lt;date&gt; path is for, or -1 if the path isn't one.
+     */
+    public static long getDateFromWeatherPath(String path) {
+        if (path == null || !path.startsWith(PATH_WEATHER_DAY_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(path.substring(PATH_WEATHER_DAY_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
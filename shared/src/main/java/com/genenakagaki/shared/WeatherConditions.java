@@ -0,0 +1,58 @@
+package com.genenakagaki.shared;
+
+/**
+ * Groups OpenWeatherMap condition codes into the conditions Sunshine has art for. See
+ * http://openweathermap.org/weather-conditions for the codes.
+ */
+public final class WeatherConditions {
+
+    public static final int UNKNOWN = 0;
+    public static final int STORM = 1;
+    public static final int LIGHT_RAIN = 2;
+    public static final int RAIN = 3;
+    public static final int SNOW = 4;
+    public static final int FOG = 5;
+    public static final int CLEAR = 6;
+    public static final int LIGHT_CLOUDS = 7;
+    public static final int CLOUDS = 8;
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * Returns the condition the code belongs to, or {@link #UNKNOWN}. Callers pick their own art
+     * for unknown codes.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 771 || weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return STORM;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return STORM;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return CLEAR;
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,36 @@
+package com.genenakagaki.shared;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date arithmetic for forecast days. A forecast day is stored as a normalized date: midnight UTC
+ * of the day it is in the user's time zone.
+ */
+public final class WeatherDates {
+
+    public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private WeatherDates() {
+    }
+
+    /**
+     * Returns today's date in the user's time zone, normalized.
+     */
+    public static long getNormalizedUtcDateForToday() {
+        long utcNowMillis = System.currentTimeMillis();
+        long localNowMillis = utcNowMillis + TimeZone.getDefault().getOffset(utcNowMillis);
+        return normalizeDate(localNowMillis);
+    }
+
+    /**
+     * Returns midnight UTC of the UTC day the time is in.
+     */
+    public static long normalizeDate(long date) {
+        return date - date % DAY_IN_MILLIS;
+    }
+
+    public static boolean isDateNormalized(long millisSinceEpoch) {
+        return millisSinceEpoch % DAY_IN_MILLIS == 0;
+    }
+}
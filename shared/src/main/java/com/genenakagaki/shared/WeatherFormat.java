@@ -0,0 +1,39 @@
+package com.genenakagaki.shared;
+
+/**
+ * Builds the temperature and wind strings the app shows, without needing Android. The format
+ * patterns live in the app's string resources, so callers look them up and pass them in.
+ */
+public final class WeatherFormat {
+
+    private WeatherFormat() {
+    }
+
+    /**
+     * Returns the temperature in the user's units, formatted with a pattern like the
+     * app's format_temperature.
+     */
+    public static String formatTemperature(String format, double temperatureInCelsius,
+                                           boolean metric) {
+        double temperature = temperatureInCelsius;
+        if (!metric) {
+            temperature = WeatherUnits.celsiusToFahrenheit(temperature);
+        }
+        return String.format(format, temperature);
+    }
+
+    /**
+     * Returns the wind speed in the user's units and the compass direction it's coming from, such
+     * as "2 km/h SW". Both patterns take the speed and then the direction.
+     */
+    public static String formatWind(String kmhFormat, String mphFormat, float windSpeedInKmh,
+                                    float degrees, boolean metric) {
+        String format = kmhFormat;
+        float windSpeed = windSpeedInKmh;
+        if (!metric) {
+            format = mphFormat;
+            windSpeed = WeatherUnits.kmhToMph(windSpeed);
+        }
+        return String.format(format, windSpeed, WeatherUnits.getWindDirection(degrees));
+    }
+}
@@ -0,0 +1,37 @@
+package com.genenakagaki.shared;
+
+/**
+ * Unit conversions for the values OpenWeatherMap sends, which are metric.
+ */
+public final class WeatherUnits {
+
+    private static final float MILES_PER_KILOMETER = .621371192237334f;
+
+    private static final String[] COMPASS_DIRECTIONS =
+            {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private WeatherUnits() {
+    }
+
+    public static double celsiusToFahrenheit(double temperatureInCelsius) {
+        return (temperatureInCelsius * 1.8) + 32;
+    }
+
+    public static float kmhToMph(float speedInKmh) {
+        return MILES_PER_KILOMETER * speedInKmh;
+    }
+
+    /**
+     * Returns the compass direction, such as "NW", the wind is coming from. Each direction covers
+     * the 45 degrees centered on it, and anything outside [22.5, 337.5) is "N".
+     */
+    public static String getWindDirection(float degrees) {
+        if (Float.isNaN(degrees)) {
+            return "Unknown";
+        }
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return "N";
+        }
+        return COMPASS_DIRECTIONS[(int) ((degrees + 22.5) / 45)];
+    }
+}
@@ -0,0 +1,87 @@
+package com.genenakagaki.wear;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the cost of drawing one frame of the watch face, with the cached static layer and with
+ * a full redraw. Results are logged and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SunshineWatchFaceUIBenchmark {
+
+    private static final String TAG = SunshineWatchFaceUIBenchmark.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int FRAMES = 1000;
+
+    private SunshineWatchFaceUI mWatchFaceUI;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Before
+    public void setUp() {
+        mWatchFaceUI = new SunshineWatchFaceUI(InstrumentationRegistry.getTargetContext());
+        mWatchFaceUI.setWeatherIconResourceId(R.drawable.ic_light_clouds);
+        mWatchFaceUI.setMaxTempString("25°");
+        mWatchFaceUI.setMinTempString("16°");
+
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Test
+    public void interactiveFrame() {
+        mWatchFaceUI.adjustToCurrentMode(false);
+        compare("interactive");
+    }
+
+    @Test
+    public void ambientFrame() {
+        mWatchFaceUI.adjustToCurrentMode(true);
+        compare("ambient");
+    }
+
+    private void compare(String mode) {
+        long layeredNs = measure(true);
+        long fullNs = measure(false);
+
+        Log.i(TAG, mode + ": layered " + layeredNs + " ns/frame, full redraw " + fullNs + " ns/frame");
+
+        Bundle results = new Bundle();
+        results.putLong(mode + "_layered_ns", layeredNs);
+        results.putLong(mode + "_full_redraw_ns", fullNs);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private long measure(boolean layered) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            drawFrame(layered);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame(layered);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / FRAMES;
+    }
+
+    private void drawFrame(boolean layered) {
+        if (layered) {
+            mWatchFaceUI.draw(mCanvas, mBounds);
+        } else {
+            mWatchFaceUI.drawFullFrame(mCanvas, mBounds);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.genenakagaki.wear;
+
+import android.util.LongSparseArray;
+
+import com.genenakagaki.shared.ForecastCodec;
+
+/**
+ * The forecast days the watch knows about, sorted by date. Each day is kept as the one day
+ * {@link ForecastCodec} payload it arrived in and read with the codec when needed.
+ */
+public class ForecastStore {
+
+    private final LongSparseArray<byte[]> mDays = new LongSparseArray<>();
+
+    /**
+     * Stores every day in the payload, replacing any day with the same date. Returns false if the
+     * payload isn't valid.
+     */
+    public boolean put(byte[] payload) {
+        if (!ForecastCodec.isValid(payload) || ForecastCodec.getDayCount(payload) != 1) {
+            return false;
+        }
+        mDays.put(ForecastCodec.getDate(payload, 0), payload);
+        return true;
+    }
+
+    public void remove(long date) {
+        mDays.delete(date);
+    }
+
+    public void clear() {
+        mDays.clear();
+    }
+
+    public int size() {
+        return mDays.size();
+    }
+
+    public long getDate(int index) {
+        return mDays.keyAt(index);
+    }
+
+    /**
+     * Returns the index of the day with the given date, or -1 if there is none.
+     */
+    public int indexOfDate(long date) {
+        return mDays.indexOfKey(date);
+    }
+
+    public byte[] getPayload(int index) {
+        return mDays.valueAt(index);
+    }
+
+    public int getWeatherId(int index) {
+        return ForecastCodec.getWeatherId(mDays.valueAt(index), 0);
+    }
+
+    public int getHighDeciDegrees(int index) {
+        return ForecastCodec.getHighDeciDegrees(mDays.valueAt(index), 0);
+    }
+
+    public int getLowDeciDegrees(int index) {
+        return ForecastCodec.getLowDeciDegrees(mDays.valueAt(index), 0);
+    }
+
+    public boolean isImperial(int index) {
+        return ForecastCodec.isImperial(mDays.valueAt(index));
+    }
+}
@@ -7,34 +7,19 @@ import android.content.IntentFilter;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.net.Uri;
-import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
 import android.os.Message;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
-import android.util.Log;
 import android.view.SurfaceHolder;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.CapabilityApi;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.MessageEvent;
-import com.google.android.gms.wearable.Wearable;
+import com.genenakagaki.shared.ForecastCodec;
+import com.genenakagaki.shared.WeatherConditions;
+import com.genenakagaki.shared.WeatherDates;
 
 import java.util.Calendar;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
-import static android.R.id.message;
-
 /**
  * Created by gene on 1/24/17.
  */
@@ -52,11 +37,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine
-            implements
-            GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener,
-            MessageApi.MessageListener {
+    private class Engine extends CanvasWatchFaceService.Engine {
 
         static final int MSG_UPDATE_TIME = 0;
 
@@ -79,9 +60,27 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             }
         };
 
+        final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mSunshineWatchFaceUI.onTimeZoneChanged();
+                invalidate();
+            }
+        };
+        boolean mRegisteredTimeZoneReceiver = false;
+
+        // WeatherListenerService updates the store in the background and tells us about it here
+        final BroadcastReceiver mWeatherReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                showTodaysWeather();
+            }
+        };
+
         SunshineWatchFaceUI mSunshineWatchFaceUI;
 
-        private GoogleApiClient mGoogleApiClient;
+        WeatherStore mWeatherStore;
+        long mShownDate = -1;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -89,20 +88,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             mSunshineWatchFaceUI = new SunshineWatchFaceUI(SunshineWatchFaceService.this);
 
-            mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
-                    .addApi(Wearable.API)
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .build();
-
-            mGoogleApiClient.connect();
+            // Reads the saved forecast synchronously, so the first frame already has weather
+            mWeatherStore = WeatherStore.getInstance(SunshineWatchFaceService.this);
+            LocalBroadcastManager.getInstance(SunshineWatchFaceService.this).registerReceiver(
+                    mWeatherReceiver, new IntentFilter(WeatherStore.ACTION_WEATHER_CHANGED));
+            showTodaysWeather();
         }
 
-
-
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            LocalBroadcastManager.getInstance(SunshineWatchFaceService.this)
+                    .unregisterReceiver(mWeatherReceiver);
             super.onDestroy();
         }
 
@@ -111,17 +108,38 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
-                mGoogleApiClient.connect();
+                registerTimeZoneReceiver();
             } else {
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    mGoogleApiClient.disconnect();
-                }
+                unregisterTimeZoneReceiver();
+            }
+        }
+
+        private void registerTimeZoneReceiver() {
+            if (mRegisteredTimeZoneReceiver) {
+                return;
             }
+            mRegisteredTimeZoneReceiver = true;
+            // The time zone may have changed while we weren't visible
+            mSunshineWatchFaceUI.onTimeZoneChanged();
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+        }
+
+        private void unregisterTimeZoneReceiver() {
+            if (!mRegisteredTimeZoneReceiver) {
+                return;
+            }
+            mRegisteredTimeZoneReceiver = false;
+            SunshineWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            // Once the day changes, show the forecast for the new day
+            if (WeatherDates.getNormalizedUtcDateForToday() != mShownDate) {
+                showTodaysWeather();
+            }
             invalidate();
         }
 
@@ -142,74 +160,61 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mSunshineWatchFaceUI.draw(canvas, bounds);
         }
 
-        @Override
-        public void onConnected(@Nullable Bundle bundle) {
-            //Log.d(TAG, "onConnected: " + bundle);
+        private void showTodaysWeather() {
+            mShownDate = WeatherDates.getNormalizedUtcDateForToday();
 
-            Wearable.MessageApi.addListener(mGoogleApiClient, this);
-        }
+            byte[] today = mWeatherStore.getDayPayload(mShownDate);
+            if (today == null) {
+                mSunshineWatchFaceUI.setWeatherIconResourceId(-1);
+                mSunshineWatchFaceUI.setMaxTempString("");
+                mSunshineWatchFaceUI.setMinTempString("");
+                invalidate();
+                return;
+            }
 
-        @Override
-        public void onConnectionSuspended(int i) {
-            Log.d(TAG, "onConnectionSuspended: " + i);
-        }
+            int weatherId = ForecastCodec.getWeatherId(today, 0);
+            int weatherIcon;
+            switch (WeatherConditions.getCondition(weatherId)) {
+                case WeatherConditions.STORM:
+                    weatherIcon = R.drawable.ic_storm;
+                    break;
+                case WeatherConditions.LIGHT_RAIN:
+                    weatherIcon = R.drawable.ic_light_rain;
+                    break;
+                case WeatherConditions.RAIN:
+                    weatherIcon = R.drawable.ic_rain;
+                    break;
+                case WeatherConditions.SNOW:
+                    weatherIcon = R.drawable.ic_snow;
+                    break;
+                case WeatherConditions.FOG:
+                    weatherIcon = R.drawable.ic_fog;
+                    break;
+                case WeatherConditions.LIGHT_CLOUDS:
+                    weatherIcon = R.drawable.ic_light_clouds;
+                    break;
+                case WeatherConditions.CLOUDS:
+                    weatherIcon = R.drawable.ic_cloudy;
+                    break;
+                default:
+                    weatherIcon = R.drawable.ic_clear;
+                    break;
+            }
 
-        @Override
-        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-            //Log.d(TAG, "onConnectionFailed: " + connectionResult);
+            mSunshineWatchFaceUI.setWeatherIconResourceId(weatherIcon);
+
+            boolean imperial = ForecastCodec.isImperial(today);
+            mSunshineWatchFaceUI.setMaxTempString(formatTemperature(
+                    ForecastCodec.getHighDeciDegrees(today, 0), imperial));
+            mSunshineWatchFaceUI.setMinTempString(formatTemperature(
+                    ForecastCodec.getLowDeciDegrees(today, 0), imperial));
+
+            invalidate();
         }
 
-        @Override
-        public void onMessageReceived(final MessageEvent messageEvent) {
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                public void run() {
-                    //Log.d(TAG, "onMessageReceived");
-                    String message = new String(messageEvent.getData());
-                    //Log.d(TAG, message);
-
-                    String[] values = message.split(",");
-
-                    int weatherId = Integer.valueOf(values[0]);
-                    int weatherIcon;
-
-                    if (weatherId >= 200 && weatherId <= 232) {
-                        weatherIcon = R.drawable.ic_storm;
-                    } else if (weatherId >= 300 && weatherId <= 321) {
-                        weatherIcon = R.drawable.ic_light_rain;
-                    } else if (weatherId >= 500 && weatherId <= 504) {
-                        weatherIcon = R.drawable.ic_rain;
-                    } else if (weatherId == 511) {
-                        weatherIcon = R.drawable.ic_snow;
-                    } else if (weatherId >= 520 && weatherId <= 531) {
-                        weatherIcon = R.drawable.ic_rain;
-                    } else if (weatherId >= 600 && weatherId <= 622) {
-                        weatherIcon = R.drawable.ic_snow;
-                    } else if (weatherId >= 701 && weatherId <= 761) {
-                        weatherIcon = R.drawable.ic_fog;
-                    } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-                        weatherIcon = R.drawable.ic_storm;
-                    } else if (weatherId == 800) {
-                        weatherIcon = R.drawable.ic_clear;
-                    } else if (weatherId == 801) {
-                        weatherIcon = R.drawable.ic_light_clouds;
-                    } else if (weatherId >= 802 && weatherId <= 804) {
-                        weatherIcon = R.drawable.ic_cloudy;
-                    } else if (weatherId >= 900 && weatherId <= 906) {
-                        weatherIcon = R.drawable.ic_storm;
-                    } else if (weatherId >= 958 && weatherId <= 962) {
-                        weatherIcon = R.drawable.ic_storm;
-                    } else {
-                        weatherIcon = R.drawable.ic_clear;
-                    }
-
-                    mSunshineWatchFaceUI.setWeatherIconResourceId(weatherIcon);
-
-                    mSunshineWatchFaceUI.setMaxTempString(values[1]);
-                    mSunshineWatchFaceUI.setMinTempString(values[2]);
-
-                    invalidate();
-                }
-            });
+        private String formatTemperature(int deciDegreesCelsius, boolean imperial) {
+            return getString(R.string.format_temperature,
+                    ForecastCodec.toDegrees(deciDegreesCelsius, imperial));
         }
     }
 }
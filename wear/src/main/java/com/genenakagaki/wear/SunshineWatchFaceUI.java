@@ -3,28 +3,20 @@ package com.genenakagaki.wear;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.support.v4.content.ContextCompat;
 import android.text.format.DateFormat;
-import android.util.DisplayMetrics;
 import android.util.TypedValue;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
-
-import static android.R.attr.resource;
-import static android.R.attr.x;
-import static android.R.attr.y;
-import static java.security.AccessController.getContext;
+import java.util.TimeZone;
 
 /**
  * Created by gene on 1/27/17.
@@ -50,15 +42,37 @@ public class SunshineWatchFaceUI {
     private Paint mMinTempPaint;
 
     private int mWeatherIconResourceId = -1;
+    private Bitmap mWeatherIcon;
+    private WeatherIconCache mWeatherIconCache;
+    private int mWeatherIconSize;
+    private boolean mInAmbientMode;
     private String mMaxTempString = "";
     private String mMinTempString = "";
 
+    private float mMaxTempWidth;
+
     private Calendar mCalendar;
     private Date mDate;
     private SimpleDateFormat mDateFormat;
 
+    // Reused every frame so drawing the time doesn't allocate
+    private final char[] mHourChars = new char[2];
+    private final char[] mMinuteChars = new char[2];
+    private float mColonWidth;
+
+    // The date only changes once a day, so it is formatted and measured only then
+    private int mDateKey = -1;
+    private String mDateString;
+    private float mDateWidth;
+
+    // Everything but the time, drawn offscreen and reused until something in it changes
+    private Bitmap mStaticLayer;
+    private Canvas mStaticLayerCanvas;
+    private boolean mStaticLayerValid;
+
     private float mYOffset;
     private float mLineHeight;
+    private float mLineLength;
 
     public SunshineWatchFaceUI(Context context) {
         mContext = context;
@@ -91,6 +105,11 @@ public class SunshineWatchFaceUI {
 
         mYOffset = resources.getDimension(R.dimen.digital_y_offset);
         mLineHeight = resources.getDimension(R.dimen.digital_line_height);
+        mLineLength = resources.getDimension(R.dimen.watchface_line_length);
+        mColonWidth = mColonPaint.measureText(":");
+
+        mWeatherIconCache = new WeatherIconCache(resources);
+        mWeatherIconSize = (int) resources.getDimension(R.dimen.watchface_weather_icon_size);
     }
 
     public void adjustToCurrentMode(boolean inAmbientMode) {
@@ -110,82 +129,146 @@ public class SunshineWatchFaceUI {
         mMaxTempPaint.setAntiAlias(!inAmbientMode);
         mMinTempPaint.setAntiAlias(!inAmbientMode);
 
-        ColorMatrix cm = new ColorMatrix();
-        if (inAmbientMode) {
-            cm.setSaturation(0);
-        } else {
-            cm.setSaturation(1);
-        }
-        ColorMatrixColorFilter f = new ColorMatrixColorFilter(cm);
-        mWeatherIconPaint.setColorFilter(f);
+        mInAmbientMode = inAmbientMode;
+        updateWeatherIcon();
 
         mBackgroundPaint.setColor(color);
+        mStaticLayerValid = false;
     }
 
+    /**
+     * Draws the watch face by compositing the cached static layer (background, date, line and
+     * weather) and drawing only the time on top. The layer is redrawn when the weather, the date,
+     * the mode or the bounds change.
+     */
     public void draw(Canvas canvas, Rect bounds) {
         long now = System.currentTimeMillis();
         mCalendar.setTimeInMillis(now);
-        mDate.setTime(now);
 
-        // Draw background
-        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        if (updateDate(now)) {
+            mStaticLayerValid = false;
+        }
 
-        // Draw time
-        String hourString = String.format("%02d", mCalendar.get(Calendar.HOUR_OF_DAY));
-        String minuteString = String.format("%02d", mCalendar.get(Calendar.MINUTE));
-        float hourWidth = mHourPaint.measureText(hourString);
-        float colonWidth = mColonPaint.measureText(":");
-        float minuteWidth = mMinutePaint.measureText(minuteString);
-        float x = bounds.centerX() - (hourWidth + colonWidth + minuteWidth) / 2;
+        if (mStaticLayer == null
+                || mStaticLayer.getWidth() != bounds.width()
+                || mStaticLayer.getHeight() != bounds.height()) {
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
+            }
+            mStaticLayer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mStaticLayerCanvas = new Canvas(mStaticLayer);
+            mStaticLayerValid = false;
+        }
 
-        canvas.drawText(hourString, x, mYOffset, mHourPaint);
-        x += hourWidth;
-        canvas.drawText(":", x, mYOffset, mColonPaint);
-        x += colonWidth;
-        canvas.drawText(minuteString, x, mYOffset, mMinutePaint);
+        if (!mStaticLayerValid) {
+            drawStaticLayer(mStaticLayerCanvas, bounds);
+            mStaticLayerValid = true;
+        }
+
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        drawTime(canvas, bounds);
+    }
+
+    /**
+     * Draws every element of the watch face directly onto the canvas. This is what draw did before
+     * the static layer was cached, and is kept to compare the two in benchmarks.
+     */
+    void drawFullFrame(Canvas canvas, Rect bounds) {
+        long now = System.currentTimeMillis();
+        mCalendar.setTimeInMillis(now);
+        updateDate(now);
+
+        drawStaticLayer(canvas, bounds);
+        drawTime(canvas, bounds);
+    }
+
+    private void drawStaticLayer(Canvas canvas, Rect bounds) {
+        // Draw background
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
 
         // Draw date
-        String dateString = mDateFormat.format(mDate).toUpperCase();
-        float dateWidth = mDatePaint.measureText(dateString);
-        x = bounds.centerX() - dateWidth / 2;
-        canvas.drawText(dateString, x, mYOffset + mLineHeight * 1.3f, mDatePaint);
+        float x = bounds.centerX() - mDateWidth / 2;
+        canvas.drawText(mDateString, x, mYOffset + mLineHeight * 1.3f, mDatePaint);
 
         // Draw line
-        float lineWidth = mContext.getResources().getDimension(R.dimen.watchface_line_length);
         float lineY = mYOffset + mLineHeight * 2;
-        canvas.drawLine(bounds.centerX() - lineWidth/2, lineY, bounds.centerX() + lineWidth/2, lineY, mLinePaint);
+        canvas.drawLine(bounds.centerX() - mLineLength / 2, lineY, bounds.centerX() + mLineLength / 2, lineY, mLinePaint);
 
         // Draw weather icon
-        if (mWeatherIconResourceId != -1) {
-            Bitmap weatherIcon = BitmapFactory.decodeResource(mContext.getResources(), mWeatherIconResourceId);
-            // resize weather icon
-            DisplayMetrics displayMetrics = mContext.getResources().getDisplayMetrics();
-            float size = mContext.getResources().getDimension(R.dimen.watchface_weather_icon_size);
-            weatherIcon = Bitmap.createScaledBitmap(weatherIcon, (int)size, (int)size, false);
-            // draw weather icon
+        if (mWeatherIcon != null) {
+            // Already decoded and scaled for the current mode, so this is just a blit
             float y = mYOffset + mLineHeight * 3.8f;
-            canvas.drawBitmap(weatherIcon, bounds.centerX() - size * 1.5f, y - mLineHeight * 1.5f, mWeatherIconPaint);
+            canvas.drawBitmap(mWeatherIcon, bounds.centerX() - mWeatherIconSize * 1.5f, y - mLineHeight * 1.5f, mWeatherIconPaint);
 
             // Draw max and min temperature
-            float maxTempWidth = mMaxTempPaint.measureText(mMaxTempString);
-            x = bounds.centerX() - maxTempWidth / 2;
+            x = bounds.centerX() - mMaxTempWidth / 2;
             canvas.drawText(mMaxTempString, x, y, mMaxTempPaint);
 
-            x = bounds.centerX() + maxTempWidth / 2f;
+            x = bounds.centerX() + mMaxTempWidth / 2f;
             canvas.drawText(mMinTempString, x, y, mMinTempPaint);
         }
+    }
 
+    private void drawTime(Canvas canvas, Rect bounds) {
+        writeTwoDigits(mHourChars, mCalendar.get(Calendar.HOUR_OF_DAY));
+        writeTwoDigits(mMinuteChars, mCalendar.get(Calendar.MINUTE));
+        float hourWidth = mHourPaint.measureText(mHourChars, 0, 2);
+        float minuteWidth = mMinutePaint.measureText(mMinuteChars, 0, 2);
+        float x = bounds.centerX() - (hourWidth + mColonWidth + minuteWidth) / 2;
 
+        canvas.drawText(mHourChars, 0, 2, x, mYOffset, mHourPaint);
+        x += hourWidth;
+        canvas.drawText(":", x, mYOffset, mColonPaint);
+        x += mColonWidth;
+        canvas.drawText(mMinuteChars, 0, 2, x, mYOffset, mMinutePaint);
     }
 
     public void setWeatherIconResourceId(int resourceId) {
-       mWeatherIconResourceId = resourceId;
+        mWeatherIconResourceId = resourceId;
+        updateWeatherIcon();
+        mStaticLayerValid = false;
     }
     public void setMaxTempString(String maxTempString) {
         mMaxTempString = maxTempString;
+        mMaxTempWidth = mMaxTempPaint.measureText(maxTempString);
+        mStaticLayerValid = false;
     }
     public void setMinTempString(String minTempString) {
         mMinTempString = minTempString;
+        mStaticLayerValid = false;
+    }
+
+    public void onTimeZoneChanged() {
+        mCalendar.setTimeZone(TimeZone.getDefault());
+        mDateFormat.setTimeZone(TimeZone.getDefault());
+        mDateKey = -1;
+    }
+
+    // Returns true if the date changed since the last frame
+    private boolean updateDate(long now) {
+        int dateKey = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (dateKey == mDateKey) {
+            return false;
+        }
+
+        mDateKey = dateKey;
+        mDate.setTime(now);
+        mDateString = mDateFormat.format(mDate).toUpperCase();
+        mDateWidth = mDatePaint.measureText(mDateString);
+        return true;
+    }
+
+    private static void writeTwoDigits(char[] chars, int value) {
+        chars[0] = (char) ('0' + value / 10);
+        chars[1] = (char) ('0' + value % 10);
+    }
+
+    private void updateWeatherIcon() {
+        if (mWeatherIconResourceId == -1) {
+            mWeatherIcon = null;
+        } else {
+            mWeatherIcon = mWeatherIconCache.getIcon(mWeatherIconResourceId, mWeatherIconSize, mInAmbientMode);
+        }
     }
 
     private Paint createTextPaint(int colorResource, Typeface typeface) {
@@ -0,0 +1,63 @@
+package com.genenakagaki.wear;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+/**
+ * Keeps weather icons decoded and scaled to the size they are drawn at, so the watch face only
+ * has to blit them. Ambient mode gets its own desaturated copy instead of a color filter.
+ */
+public class WeatherIconCache {
+
+    // Every icon in both modes, with room to spare
+    private static final int MAX_ENTRIES = 32;
+
+    private final Resources mResources;
+    private final LruCache<Long, Bitmap> mIcons = new LruCache<>(MAX_ENTRIES);
+    private final Paint mDesaturatePaint;
+
+    public WeatherIconCache(Resources resources) {
+        mResources = resources;
+
+        ColorMatrix cm = new ColorMatrix();
+        cm.setSaturation(0);
+        mDesaturatePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mDesaturatePaint.setColorFilter(new ColorMatrixColorFilter(cm));
+    }
+
+    public Bitmap getIcon(int resourceId, int size, boolean ambient) {
+        long key = ((long) resourceId << 32) | ((long) size << 1) | (ambient ? 1 : 0);
+
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = ambient ? desaturate(getIcon(resourceId, size, false)) : decode(resourceId, size);
+            mIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    public void clear() {
+        mIcons.evictAll();
+    }
+
+    private Bitmap decode(int resourceId, int size) {
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, resourceId);
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    private Bitmap desaturate(Bitmap icon) {
+        Bitmap gray = Bitmap.createBitmap(icon.getWidth(), icon.getHeight(), Bitmap.Config.ARGB_8888);
+        new Canvas(gray).drawBitmap(icon, 0, 0, mDesaturatePaint);
+        return gray;
+    }
+}
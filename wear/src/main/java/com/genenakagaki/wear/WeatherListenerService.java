@@ -0,0 +1,16 @@
+package com.genenakagaki.wear;
+
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Receives the forecast from the phone whether or not the watch face is showing, and keeps
+ * {@link WeatherStore} up to date.
+ */
+public class WeatherListenerService extends WearableListenerService {
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        WeatherStore.getInstance(this).applyDataEvents(dataEvents);
+    }
+}
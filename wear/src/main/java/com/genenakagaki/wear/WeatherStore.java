@@ -0,0 +1,257 @@
+package com.genenakagaki.wear;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.genenakagaki.shared.WearContract;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide holder of the forecast the phone has sent. {@link WeatherListenerService} writes
+ * to it from the background, and the watch face reads from it. Every change is announced with a
+ * local {@link #ACTION_WEATHER_CHANGED} broadcast.
+ * <p>
+ * The forecast is also saved to a small file along with the time it was received. The file is
+ * read synchronously when the store is created, so the watch face has weather to draw from its
+ * first frame instead of waiting on the data layer after a reboot or a face switch.
+ */
+public class WeatherStore {
+
+    private static final String TAG = WeatherStore.class.getSimpleName();
+
+    public static final String ACTION_WEATHER_CHANGED =
+            "com.genenakagaki.wear.ACTION_WEATHER_CHANGED";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+
+    private static final String FILE_NAME = "forecast.bin";
+    private static final int FILE_VERSION = 1;
+
+    // A day payload is 18 bytes; anything much bigger means the file is corrupt
+    private static final int MAX_DAY_PAYLOAD_SIZE = 1024;
+
+    private static WeatherStore sInstance;
+
+    private final Context mContext;
+
+    private final AtomicFile mFile;
+
+    // Guarded by this
+    private final ForecastStore mForecastStore = new ForecastStore();
+    private long mReceivedTimeMillis;
+
+    private WeatherStore(Context context) {
+        mContext = context.getApplicationContext();
+        mFile = new AtomicFile(new File(mContext.getFilesDir(), FILE_NAME));
+    }
+
+    public static synchronized WeatherStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherStore(context);
+            // Only fall back to the data layer the first time, before anything was saved
+            if (!sInstance.loadFromFile()) {
+                sInstance.loadFromDataLayer();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns when the stored forecast was last changed, in System.currentTimeMillis() time, or 0
+     * if nothing has been received yet.
+     */
+    public synchronized long getReceivedTimeMillis() {
+        return mReceivedTimeMillis;
+    }
+
+    /**
+     * Returns the one day payload stored for the date, or null if there is none. Payloads are
+     * never modified once stored.
+     */
+    public synchronized byte[] getDayPayload(long date) {
+        int index = mForecastStore.indexOfDate(date);
+        return index < 0 ? null : mForecastStore.getPayload(index);
+    }
+
+    /**
+     * Applies the changes to /weather/&lt;date&gt; items and announces them if anything changed.
+     */
+    public void applyDataEvents(DataEventBuffer dataEvents) {
+        boolean changed = false;
+        synchronized (this) {
+            for (DataEvent event : dataEvents) {
+                DataItem dataItem = event.getDataItem();
+                long date = WearContract.getDateFromWeatherPath(dataItem.getUri().getPath());
+                if (date == -1) {
+                    continue;
+                }
+
+                if (event.getType() == DataEvent.TYPE_CHANGED) {
+                    changed |= putDay(dataItem);
+                } else if (event.getType() == DataEvent.TYPE_DELETED) {
+                    mForecastStore.remove(date);
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            onWeatherChanged();
+        }
+    }
+
+    // The data layer keeps every day the phone put, so it is where a new process starts from
+    private void loadFromDataLayer() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                GoogleApiClient googleApiClient = new GoogleApiClient.Builder(mContext)
+                        .addApi(Wearable.API)
+                        .build();
+                ConnectionResult connectionResult =
+                        googleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (!connectionResult.isSuccess()) {
+                    Log.w(TAG, "Failed to connect to Play Services: " + connectionResult);
+                    return;
+                }
+
+                Uri weatherUri = new Uri.Builder()
+                        .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                        .path(WearContract.PATH_WEATHER)
+                        .build();
+                DataItemBuffer dataItems = Wearable.DataApi
+                        .getDataItems(googleApiClient, weatherUri, DataApi.FILTER_PREFIX)
+                        .await();
+                boolean changed = false;
+                try {
+                    if (!dataItems.getStatus().isSuccess()) {
+                        Log.w(TAG, "Failed to read the forecast: " + dataItems.getStatus());
+                        return;
+                    }
+                    synchronized (WeatherStore.this) {
+                        for (DataItem dataItem : dataItems) {
+                            changed |= putDay(dataItem);
+                        }
+                    }
+                } finally {
+                    dataItems.release();
+                    googleApiClient.disconnect();
+                }
+
+                // Saving an empty store would stop the next process from looking here again
+                if (changed) {
+                    onWeatherChanged();
+                }
+            }
+        }).start();
+    }
+
+    private boolean putDay(DataItem dataItem) {
+        if (WearContract.getDateFromWeatherPath(dataItem.getUri().getPath()) == -1) {
+            return false;
+        }
+        return mForecastStore.put(DataMapItem.fromDataItem(dataItem).getDataMap()
+                .getByteArray(WearContract.KEY_FORECAST));
+    }
+
+    // Called off the main thread, so saving here doesn't block drawing
+    private void onWeatherChanged() {
+        synchronized (this) {
+            mReceivedTimeMillis = System.currentTimeMillis();
+            saveToFile();
+        }
+        LocalBroadcastManager.getInstance(mContext)
+                .sendBroadcast(new Intent(ACTION_WEATHER_CHANGED));
+    }
+
+    /*
+     * The file holds the version, the received time, the number of days, and then each one day
+     * payload prefixed with its length. Days are kept as separate payloads because each carries
+     * its own units flag.
+     */
+    private boolean loadFromFile() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mFile.openRead());
+            if (in.readInt() != FILE_VERSION) {
+                return false;
+            }
+
+            long receivedTimeMillis = in.readLong();
+            int dayCount = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < dayCount; i++) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_DAY_PAYLOAD_SIZE) {
+                        throw new IOException("Bad day payload length " + length);
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    mForecastStore.put(payload);
+                }
+                mReceivedTimeMillis = receivedTimeMillis;
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the saved forecast", e);
+            synchronized (this) {
+                mForecastStore.clear();
+            }
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Guarded by this
+    private void saveToFile() {
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = mFile.startWrite();
+            DataOutputStream out = new DataOutputStream(fileOut);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(mReceivedTimeMillis);
+            out.writeInt(mForecastStore.size());
+            for (int i = 0; i < mForecastStore.size(); i++) {
+                byte[] payload = mForecastStore.getPayload(i);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+            out.flush();
+            mFile.finishWrite(fileOut);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the forecast", e);
+            if (fileOut != null) {
+                mFile.failWrite(fileOut);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.genenakagaki.wear;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draws the watch face frame by frame on the JVM and fails if a frame costs more than the budget.
+ * <p>
+ * Robolectric's shadow canvas records draw calls instead of rasterizing them, so the numbers
+ * mostly measure our own work plus the shadow's bookkeeping. They are for catching regressions,
+ * not for predicting frame times on a watch; SunshineWatchFaceUIBenchmark does that on a device.
+ * <p>
+ * Budgets and frame counts can be overridden with system properties, see the constants below.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SunshineWatchFaceUIFrameBudgetTest {
+
+    private static final String PROPERTY_PREFIX = "watchface.benchmark.";
+
+    private static final int SIZE = 320;
+
+    private static final int WARMUP_FRAMES = getIntProperty("warmupFrames", 200);
+    private static final int FRAMES = getIntProperty("frames", 2000);
+
+    private static final long MAX_MEAN_MICROS = getIntProperty("maxMeanMicros", 2000);
+    private static final long MAX_P99_MICROS = getIntProperty("maxP99Micros", 10000);
+    private static final long MAX_ALLOCATED_BYTES_PER_FRAME =
+            getIntProperty("maxAllocatedBytesPerFrame", 32 * 1024);
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private SunshineWatchFaceUI mWatchFaceUI;
+    private Rect mBounds;
+
+    @Before
+    public void setUp() {
+        mWatchFaceUI = new SunshineWatchFaceUI(RuntimeEnvironment.application);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Test
+    public void interactiveWithWeather() {
+        showWeather();
+        mWatchFaceUI.adjustToCurrentMode(false);
+        run("interactive, with weather");
+    }
+
+    @Test
+    public void interactiveWithoutWeather() {
+        mWatchFaceUI.adjustToCurrentMode(false);
+        run("interactive, without weather");
+    }
+
+    @Test
+    public void ambientWithWeather() {
+        showWeather();
+        mWatchFaceUI.adjustToCurrentMode(true);
+        run("ambient, with weather");
+    }
+
+    @Test
+    public void ambientWithoutWeather() {
+        mWatchFaceUI.adjustToCurrentMode(true);
+        run("ambient, without weather");
+    }
+
+    private void showWeather() {
+        mWatchFaceUI.setWeatherIconResourceId(R.drawable.ic_light_clouds);
+        mWatchFaceUI.setMaxTempString("25°");
+        mWatchFaceUI.setMinTempString("16°");
+    }
+
+    private void run(String name) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            mWatchFaceUI.draw(newCanvas(), mBounds);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocationOverhead = measureAllocationOverhead(threadId);
+
+        long[] frameNanos = new long[FRAMES];
+        long allocatedBytes = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            // The shadow canvas keeps a history of what was drawn on it, so every frame gets a
+            // fresh one to keep that history from growing through the run
+            Canvas canvas = newCanvas();
+
+            long bytesBefore = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            mWatchFaceUI.draw(canvas, mBounds);
+            frameNanos[i] = System.nanoTime() - start;
+            long bytesAfter = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+
+            allocatedBytes += Math.max(0, bytesAfter - bytesBefore - allocationOverhead);
+        }
+
+        long meanMicros = mean(frameNanos) / 1000;
+        long p99Micros = percentile(frameNanos, 99) / 1000;
+        long bytesPerFrame = allocatedBytes / FRAMES;
+
+        System.out.println(String.format(Locale.US,
+                "%s: mean %d us, p99 %d us, %d bytes allocated per frame (%d frames)",
+                name, meanMicros, p99Micros, bytesPerFrame, FRAMES));
+
+        assertTrue(name + ": mean frame time " + meanMicros + " us is over the budget of "
+                + MAX_MEAN_MICROS + " us", meanMicros <= MAX_MEAN_MICROS);
+        assertTrue(name + ": p99 frame time " + p99Micros + " us is over the budget of "
+                + MAX_P99_MICROS + " us", p99Micros <= MAX_P99_MICROS);
+        assertTrue(name + ": " + bytesPerFrame + " bytes allocated per frame is over the budget of "
+                        + MAX_ALLOCATED_BYTES_PER_FRAME + " bytes",
+                bytesPerFrame <= MAX_ALLOCATED_BYTES_PER_FRAME);
+    }
+
+    private static Canvas newCanvas() {
+        return new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    // What reading the allocation counter itself allocates, so it isn't charged to the frame
+    private static long measureAllocationOverhead(long threadId) {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+            long after = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+            overhead = Math.min(overhead, after - before);
+        }
+        return overhead;
+    }
+
+    private static long mean(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static long percentile(long[] values, int percentile) {
+        long[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        return Integer.getInteger(PROPERTY_PREFIX + name, defaultValue);
+    }
+}